@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("io.freefair.lombok") version "8.4"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.richardcarter"
@@ -12,10 +13,25 @@ repositories {
 
 dependencies {
     implementation("io.dropwizard.metrics:metrics-core:4.2.0")
+    implementation("io.dropwizard.metrics:metrics-jmx:4.2.0")
     testImplementation(platform("org.junit:junit-bom:5.9.1"))
     testImplementation("org.junit.jupiter:junit-jupiter")
 }
 
+// Sha1Lanes uses the incubating Vector API
+tasks.withType<JavaCompile> {
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+    jvmArgs("--add-modules", "jdk.incubator.vector")
+}
+
+// Benchmarks in src/jmh; ./gradlew jmh runs them all, see the README for running a few
+jmh {
+    // replaces, not adds to, each benchmark's @Fork(jvmArgsAppend), so SortBenchmark's heap is set here too
+    jvmArgsAppend.addAll("--add-modules", "jdk.incubator.vector", "-Xmx8g")
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,91 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BinarySearcher#search} on one sorted chunk with its prefix index.
+ * <p>
+ * warm: one searcher for the whole run, looking up the same thousand hashes over and over, so the pages it touches
+ * stay in the page cache and the CPU caches. cold: every lookup opens a new searcher (mapping the file and reading its
+ * index, like a lookup in a fresh JVM) and looks up a different hash. The file still comes from the page cache; for
+ * disk-cold numbers drop the page cache before the run ({@code echo 3 > /proc/sys/vm/drop_caches}) and look at the
+ * first iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinarySearchBenchmark {
+    private static final int WARM_TARGETS = 1024;
+    private static final int COLD_TARGETS = 1 << 16;
+
+    @Param({"4194304"})
+    public int entries;
+
+    @Param({"false", "true"})
+    public boolean interpolate;
+
+    private Path directory;
+    private String chunk;
+    private BinarySearcher searcher;
+    private byte[][] targets;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        directory = Files.createTempDirectory("search-benchmark");
+        chunk = directory.resolve("chunk.bin").toString();
+        IpRange range = new IpRange(0x0A000000L, 0x0A000000L + entries);
+        new GenerateSortedChunk(range, chunk, new Meter(), new Timer(), new Meter()).run();
+        searcher = new BinarySearcher(chunk, interpolate);
+
+        Random random = new Random(21);
+        targets = new byte[COLD_TARGETS][];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = Hasher.calculateHash(IpAddress.fromLong(range.getStartInclusive() + random.nextInt(entries)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws Exception {
+        searcher.close();
+        Files.delete(Path.of(chunk));
+        Files.delete(Path.of(PrefixIndex.filenameFor(chunk)));
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public IpAddress warm() {
+        next = (next + 1) % WARM_TARGETS;
+        return searcher.search(targets[next]);
+    }
+
+    @Benchmark
+    public IpAddress cold() throws Exception {
+        next = (next + 1) % COLD_TARGETS;
+        try (BinarySearcher fresh = new BinarySearcher(chunk, interpolate)) {
+            return fresh.search(targets[next]);
+        }
+    }
+}
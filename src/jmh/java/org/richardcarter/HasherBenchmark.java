@@ -0,0 +1,72 @@
+package org.richardcarter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of hashing one IP: allocating (as the older generators did), into a caller's buffer, and a batch at a time
+ * (with {@link Sha1Lanes} when the Vector API is available), plus the IpAddress steps the older generators did per IP.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HasherBenchmark {
+    private static final int BATCH = GenerateChunkFile.BATCH;
+
+    private int ip;
+    private IpAddress address;
+    private final byte[] hash = new byte[PackedRecords.HASH_SIZE];
+    private final byte[] hashes = new byte[BATCH * PackedRecords.HASH_SIZE];
+
+    // a 2 second iteration never increments past 255.255.255.255 from here
+    @Setup(Level.Iteration)
+    public void reset() {
+        ip = 0x0A000000;
+        address = IpAddress.fromInt(ip);
+    }
+
+    @Benchmark
+    public byte[] calculateHashAllocating() {
+        return Hasher.calculateHash(address);
+    }
+
+    @Benchmark
+    public byte[] calculateHash() {
+        Hasher.calculateHash(ip++, hash, 0);
+        return hash;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] hashRange() {
+        Hasher.hashRange(ip, BATCH, hashes);
+        ip += BATCH;
+        return hashes;
+    }
+
+    @Benchmark
+    public IpAddress increment() {
+        address = address.increment();
+        return address;
+    }
+
+    @Benchmark
+    public byte[] toBytesPlusSalt() {
+        return address.toBytesPlusSalt("SALT GOES HERE");
+    }
+}
@@ -0,0 +1,78 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting one unsorted chunk file, read to written, with {@link StorageSortInMemory} (an object per entry) and with
+ * {@link PackedRecords}. The chunk is generated once per trial and copied back before every sort.
+ * <p>
+ * The object-per-entry sort needs an 8 GB heap: set by {@code @Fork} when run from the jar, and by the jmh block of
+ * build.gradle.kts under {@code ./gradlew jmh}, whose JVM arguments take the place of {@code @Fork}'s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SortBenchmark {
+    @Param({"65536", "1048576", "16777216"})
+    public int entries;
+
+    private Path directory;
+    private Path unsorted;
+    private Path chunk;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        directory = Files.createTempDirectory("sort-benchmark");
+        unsorted = directory.resolve("unsorted.bin");
+        chunk = directory.resolve("chunk.bin");
+        new GenerateChunkFile(new IpRange(0x0A000000L, 0x0A000000L + entries), unsorted.toString(), new Meter()).run();
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() throws Exception {
+        Files.copy(unsorted, chunk, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws Exception {
+        Files.deleteIfExists(chunk);
+        Files.deleteIfExists(unsorted);
+        // GenerateChunkFile keeps its checkpoint once the chunk is done
+        GenerateChunkFile.deleteCheckpoint(unsorted.toString());
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void storageSortInMemory() {
+        new StorageSortInMemory(chunk.toString(), new Meter(), new Timer(), new Meter()).sort();
+    }
+
+    @Benchmark
+    public void packedRecords() {
+        PackedRecords records = PackedRecords.read(chunk.toString(), new Meter());
+        records.sort();
+        records.write(chunk.toString(), new Meter());
+    }
+}
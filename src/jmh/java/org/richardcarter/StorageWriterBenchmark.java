@@ -0,0 +1,82 @@
+package org.richardcarter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.richardcarter.PackedRecords.HASH_SIZE;
+import static org.richardcarter.PackedRecords.RECORD_SIZE;
+
+/**
+ * Records per second through {@link StorageWriter}, one record at a time and a block of records at a time, to a file
+ * in the temp directory. Each iteration writes a new file; with {@code preallocate} the file is sized up front the
+ * way the generators do it. Measures the disk as much as the writer, so compare runs on the same box.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageWriterBenchmark {
+    private static final int BATCH = GenerateChunkFile.BATCH;
+    // more than an iteration writes; only used when preallocating
+    private static final long EXPECTED_BYTES = 4L << 30;
+
+    @Param({"false", "true"})
+    public boolean preallocate;
+
+    private final byte[] hashes = new byte[BATCH * HASH_SIZE];
+    private final byte[] records = new byte[BATCH * RECORD_SIZE];
+    private Path file;
+    private StorageWriter writer;
+
+    @Setup(Level.Trial)
+    public void fillBuffers() {
+        Random random = new Random(21);
+        random.nextBytes(hashes);
+        random.nextBytes(records);
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws Exception {
+        file = Files.createTempFile("storage-writer", ".bin");
+        writer = new StorageWriter(file.toString(), preallocate ? EXPECTED_BYTES : 0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws Exception {
+        writer.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void writeRecord() {
+        for (int i = 0; i < BATCH; i++) {
+            writer.write(i, hashes, i * HASH_SIZE);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void writeBlock() {
+        writer.write(records, 0, records.length);
+    }
+}
@@ -1,53 +1,164 @@
 package org.richardcarter;
 
-import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import lombok.Getter;
 
-import java.io.RandomAccessFile;
-import java.util.Arrays;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
-@RequiredArgsConstructor
-public class BinarySearcher {
+import static org.richardcarter.PackedRecords.RECORD_SIZE;
+
+/**
+ * Binary searches a sorted lookup table file.
+ * The file is memory-mapped once when the searcher is created and each probe compares the target against the mapped
+ * bytes in place, so a search does no I/O syscalls and allocates nothing (other than the result).
+ * Searchers are thread-safe; keep one per file and share it.
+ * <p>
+ * If the table has a {@link PrefixIndex} sidecar, the search starts from the small window of entries that share the
+ * target's hash prefix instead of the whole file. Within that window it can optionally start with an interpolation
+ * guess, which usually lands within a page of the target.
+ * <p>
+ * Each search reports its time and the number of entries it compared (probes) to {@link Metrics}, through lock-free
+ * reservoirs so that concurrent searches don't contend on them.
+ */
+public class BinarySearcher implements HashLookup {
+    // Half-width of the window searched around an interpolation guess; a few times the expected error.
+    private static final long INTERPOLATION_WINDOW = 64;
+
+    private static final Timer SEARCH_TIME = Metrics.hotPathTimer(BinarySearcher.class, "searchTime");
+    private static final Histogram PROBES = Metrics.hotPathHistogram(BinarySearcher.class, "probes");
+
+    @Getter
     private final String filename;
+    private final MappedFile file;
+    @Getter
+    private final long countEntries;
+    private final PrefixIndex index;
+    private final boolean interpolate;
 
-    @SneakyThrows
-    public IpAddress search(byte[] targetHash) {
-        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
-            long lengthBytes = file.length();
-            if (lengthBytes % 24 != 0) {
-                throw new IllegalArgumentException(filename + " length is not a multiple of 24");
+    public BinarySearcher(String filename) {
+        this(filename, false);
+    }
+
+    /**
+     * @param interpolate guess the target's position within its prefix window before binary searching;
+     *                    only used when there's a prefix index
+     */
+    public BinarySearcher(String filename, boolean interpolate) {
+        this.filename = filename;
+        this.file = new MappedFile(filename);
+        long lengthBytes = file.getLength();
+        if (lengthBytes % RECORD_SIZE != 0) {
+            throw new IllegalArgumentException(filename + " length is not a multiple of 24");
+        }
+        this.countEntries = lengthBytes / RECORD_SIZE;
+
+        String indexFilename = PrefixIndex.filenameFor(filename);
+        if (Files.exists(Path.of(indexFilename))) {
+            index = PrefixIndex.read(indexFilename);
+            if (index.getCountEntries() != countEntries) {
+                throw new IllegalArgumentException(indexFilename + " doesn't match " + filename);
             }
-            long countEntries = lengthBytes / 24L;
-            System.out.println(countEntries);
-
-            long left = 0;
-            long right = countEntries;
-            while (true) {
-                long idx = (left + right) / 2;
-                file.seek(idx * 24L);
-                byte[] ip = new byte[4];
-                file.read(ip);
-                byte[] hash = new byte[20];
-                file.read(hash);
-
-                int compare = Arrays.compare(hash, targetHash);
-                if (compare == 0) {
-                    return IpAddress.fromByteArray(ip);
-                }
+        } else {
+            index = null;
+        }
+        this.interpolate = interpolate;
+    }
+
+    @Override
+    public IpAddress search(byte[] targetHash) {
+        long start = System.nanoTime();
+        long entry = indexOf(targetHash);
+        SEARCH_TIME.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (entry < 0) {
+            return null;
+        }
+        return IpAddress.fromLong(file.getInt(entry * RECORD_SIZE) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the index of the entry with the target hash, or -1 if there isn't one
+     */
+    public long indexOf(byte[] targetHash) {
+        if (targetHash.length != PackedRecords.HASH_SIZE) {
+            throw new IllegalArgumentException("Expected a 20 byte hash but got " + targetHash.length);
+        }
+        long t0 = PackedRecords.sortKeyOf(targetHash, 0);
+        long t1 = PackedRecords.sortKeyOf(targetHash, 8);
+        int t2 = PackedRecords.sortKeyOfInt(targetHash, 16);
 
-                if (compare > 0) {
-                    if (idx == right) {
-                        break;
-                    }
-                    right = idx;
+        long left = 0;
+        long right = countEntries;
+        int probes = 0;
+        if (index != null) {
+            int prefix = index.prefix(t0);
+            left = index.start(prefix);
+            right = index.end(prefix);
+            if (interpolate && right - left > 2 * INTERPOLATION_WINDOW) {
+                // Within a prefix the remaining key bits are uniform, so the target's position is proportional to them.
+                double fraction = ((t0 << index.getBits()) >>> 11) / (double) (1L << 53);
+                long guess = left + (long) (fraction * (right - left));
+                long windowLeft = Math.max(left, guess - INTERPOLATION_WINDOW);
+                long windowRight = Math.min(right, guess + INTERPOLATION_WINDOW);
+                boolean beforeWindow = false;
+                boolean afterWindow = false;
+                if (windowLeft > left) {
+                    probes++;
+                    beforeWindow = compareAt(windowLeft, t0, t1, t2) > 0;
+                }
+                if (!beforeWindow && windowRight < right) {
+                    probes++;
+                    afterWindow = compareAt(windowRight - 1, t0, t1, t2) < 0;
+                }
+                if (beforeWindow) {
+                    right = windowLeft;
+                } else if (afterWindow) {
+                    left = windowRight;
                 } else {
-                    if (idx == left) {
-                        break;
-                    }
-                    left = idx;
+                    left = windowLeft;
+                    right = windowRight;
                 }
             }
         }
-        return null;
+        long found = -1;
+        while (left < right) {
+            long idx = (left + right) >>> 1;
+            int compare = compareAt(idx, t0, t1, t2);
+            probes++;
+            if (compare == 0) {
+                found = idx;
+                break;
+            }
+            if (compare > 0) {
+                right = idx;
+            } else {
+                left = idx + 1;
+            }
+        }
+        PROBES.update(probes);
+        return found;
+    }
+
+    /**
+     * Compares the hash of entry {@code idx} to the target, given as sort keys.
+     */
+    private int compareAt(long idx, long t0, long t1, int t2) {
+        long position = idx * RECORD_SIZE + PackedRecords.IP_SIZE;
+        int compare = Long.compareUnsigned(PackedRecords.toSortKey(file.getLong(position)), t0);
+        if (compare != 0) {
+            return compare;
+        }
+        compare = Long.compareUnsigned(PackedRecords.toSortKey(file.getLong(position + 8)), t1);
+        if (compare != 0) {
+            return compare;
+        }
+        return Integer.compareUnsigned(PackedRecords.toSortKey(file.getInt(position + 16)), t2);
+    }
+
+    @Override
+    public void close() throws Exception {
+        file.close();
     }
 }
@@ -0,0 +1,149 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+import static org.richardcarter.PackedRecords.HASH_SIZE;
+
+/**
+ * Reverses a set of hashes without a table, by hashing every IP in a range and checking each hash against the targets.
+ * The sweep is split up fork-join style so idle cores steal work, and stops as soon as every target has been found.
+ * For a handful of hashes, or a salt there's no table for yet, that takes minutes instead of the hours a table build
+ * does.
+ */
+public class BruteForceSolver {
+    // IPs per fork-join leaf; small enough to balance across cores, big enough that splitting costs nothing.
+    private static final int LEAF_SIZE = 1 << 20;
+
+    private final List<byte[]> targets = new ArrayList<>();
+    // Open-addressing hash set of indexes into targets (-1 is empty), keyed on the first 8 bytes of each hash.
+    // SHA-1 output is already uniform, so the key's low bits pick the slot directly.
+    private final long[] keys;
+    private final int[] slots;
+    private final int mask;
+
+    private final AtomicReferenceArray<IpAddress> found;
+    private final AtomicInteger remaining;
+
+    /**
+     * @param targetHashes 20 byte hashes; duplicates are only reported once
+     */
+    public BruteForceSolver(List<byte[]> targetHashes) {
+        int capacity = Integer.highestOneBit(Math.max(1, targetHashes.size() * 2 - 1)) << 1;
+        keys = new long[capacity];
+        slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        mask = capacity - 1;
+
+        for (byte[] hash : targetHashes) {
+            if (hash.length != HASH_SIZE) {
+                throw new IllegalArgumentException("Expected a 20 byte hash but got " + hash.length);
+            }
+            long key = PackedRecords.sortKeyOf(hash, 0);
+            int slot = (int) key & mask;
+            while (slots[slot] != -1 && !matches(slot, key, hash, 0)) {
+                slot = (slot + 1) & mask;
+            }
+            if (slots[slot] == -1) {
+                keys[slot] = key;
+                slots[slot] = targets.size();
+                targets.add(hash.clone());
+            }
+        }
+        found = new AtomicReferenceArray<>(targets.size());
+        remaining = new AtomicInteger(targets.size());
+    }
+
+    public int getCountTargets() {
+        return targets.size();
+    }
+
+    public int getCountResolved() {
+        return targets.size() - remaining.get();
+    }
+
+    private boolean matches(int slot, long key, byte[] hashes, int offset) {
+        return keys[slot] == key
+                && Arrays.equals(targets.get(slots[slot]), 0, HASH_SIZE, hashes, offset, offset + HASH_SIZE);
+    }
+
+    /**
+     * @return the index into targets of the hash at {@code hashes[offset]}, or -1 if it isn't one
+     */
+    private int indexOf(byte[] hashes, int offset) {
+        long key = PackedRecords.sortKeyOf(hashes, offset);
+        for (int slot = (int) key & mask; slots[slot] != -1; slot = (slot + 1) & mask) {
+            if (matches(slot, key, hashes, offset)) {
+                return slots[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Hashes every IP in {@code range} on the common fork-join pool until all targets are found.
+     * Can be called again with another range to continue the search.
+     *
+     * @param onMatch called, from several threads at once, with each target hash as soon as its IP is found
+     * @param hashMeter marked with the number of IPs hashed
+     * @return the number of targets found so far
+     */
+    public int solve(IpRange range, BiConsumer<byte[], IpAddress> onMatch, Meter hashMeter) {
+        ForkJoinPool.commonPool().invoke(
+                new SweepTask(range.getStartInclusive(), range.getEndExclusive(), onMatch, hashMeter));
+        return getCountResolved();
+    }
+
+    private class SweepTask extends RecursiveAction {
+        private final long startInclusive;
+        private final long endExclusive;
+        private final BiConsumer<byte[], IpAddress> onMatch;
+        private final Meter hashMeter;
+
+        SweepTask(long startInclusive, long endExclusive, BiConsumer<byte[], IpAddress> onMatch, Meter hashMeter) {
+            this.startInclusive = startInclusive;
+            this.endExclusive = endExclusive;
+            this.onMatch = onMatch;
+            this.hashMeter = hashMeter;
+        }
+
+        @Override
+        protected void compute() {
+            if (remaining.get() == 0) {
+                return;
+            }
+            if (endExclusive - startInclusive > LEAF_SIZE) {
+                long mid = startInclusive + (endExclusive - startInclusive) / 2;
+                invokeAll(new SweepTask(startInclusive, mid, onMatch, hashMeter),
+                        new SweepTask(mid, endExclusive, onMatch, hashMeter));
+                return;
+            }
+
+            byte[] hashes = new byte[GenerateChunkFile.BATCH * HASH_SIZE];
+            for (long ip = startInclusive; ip < endExclusive && remaining.get() > 0; ip += GenerateChunkFile.BATCH) {
+                int count = (int) Math.min(GenerateChunkFile.BATCH, endExclusive - ip);
+                Hasher.hashRange((int) ip, count, hashes);
+                for (int i = 0; i < count; i++) {
+                    int target = indexOf(hashes, i * HASH_SIZE);
+                    if (target >= 0) {
+                        IpAddress ipAddress = IpAddress.fromLong(ip + i);
+                        if (found.compareAndSet(target, null, ipAddress)) {
+                            remaining.decrementAndGet();
+                            onMatch.accept(targets.get(target), ipAddress);
+                        }
+                    }
+                }
+                hashMeter.mark(count);
+            }
+        }
+    }
+}
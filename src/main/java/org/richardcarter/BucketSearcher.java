@@ -0,0 +1,33 @@
+package org.richardcarter;
+
+/**
+ * Looks up hashes in a table written as sorted hash-prefix buckets (see {@link GenerateBucketFiles}).
+ * The target's prefix says which bucket holds it, so a lookup is one {@link BinarySearcher} search in one small file.
+ * Buckets have no {@link PrefixIndex}; a bucket is about 2^32 / 2^bits entries, a few more probes to search whole.
+ * Thread-safe.
+ */
+public class BucketSearcher implements HashLookup {
+    private final int bits;
+    private final BinarySearcher[] searchers;
+
+    public BucketSearcher(String filenamePattern, int bits) {
+        this.bits = bits;
+        searchers = new BinarySearcher[1 << bits];
+        for (int i = 0; i < searchers.length; i++) {
+            searchers[i] = new BinarySearcher(String.format(filenamePattern, i));
+        }
+    }
+
+    @Override
+    public IpAddress search(byte[] targetHash) {
+        int bucket = PrefixIndex.prefix(PackedRecords.sortKeyOf(targetHash, 0), bits);
+        return searchers[bucket].search(targetHash);
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (BinarySearcher searcher : searchers) {
+            searcher.close();
+        }
+    }
+}
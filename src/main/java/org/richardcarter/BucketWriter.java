@@ -0,0 +1,64 @@
+package org.richardcarter;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The set of bucket files for a table partitioned by hash prefix: bucket b holds every entry whose hash starts with the
+ * {@code bits}-bit prefix b (in table order, see {@link PrefixIndex#prefix}). Once each bucket is sorted, the buckets
+ * in order form one globally sorted table.
+ * <p>
+ * Shared by all the generator workers; each worker buffers records per bucket and appends whole buffers here.
+ */
+public class BucketWriter implements AutoCloseable {
+    @Getter
+    private final int bits;
+    private final FileChannel[] channels;
+
+    @SneakyThrows
+    public BucketWriter(String filenamePattern, int bits) {
+        if (bits < PrefixIndex.MIN_BITS || bits > 16) {
+            throw new IllegalArgumentException("bits must be between " + PrefixIndex.MIN_BITS + " and 16: " + bits);
+        }
+        this.bits = bits;
+        channels = new FileChannel[1 << bits];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = FileChannel.open(Path.of(String.format(filenamePattern, i)),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        }
+    }
+
+    public int getCountBuckets() {
+        return channels.length;
+    }
+
+    public int bucketOf(byte[] hash, int offset) {
+        return PrefixIndex.prefix(PackedRecords.sortKeyOf(hash, offset), bits);
+    }
+
+    /**
+     * Appends the buffer's remaining bytes (whole records) to a bucket file.
+     */
+    @SneakyThrows
+    public void write(int bucket, ByteBuffer records) {
+        FileChannel channel = channels[bucket];
+        // Lock so that two workers' buffers can't interleave if a write comes back partial.
+        synchronized (channel) {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import lombok.SneakyThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the sorted, indexed chunk files in one run, with the stages overlapped: once chunk i is generated it is read,
+ * sorted and written back (with its {@link PrefixIndex}) while chunks i+1.. are still being generated. The whole build
+ * then takes about as long as its slowest stage instead of the sum of them.
+ * <p>
+ * Chunks are generated one at a time, in order, each by every hash worker ({@link HashPipeline}), so the first chunk is
+ * ready for sorting as early as possible. Sorting is done by a {@link SortScheduler}. The machine is shared out as:
+ * <ul>
+ *     <li>CPU: {@code hashThreads} cores hash, and in-memory sorts run on a pool of {@code sortThreads} cores.</li>
+ *     <li>RAM: sorts lease their chunk's size from a {@link MemoryBudget} and wait while it's used up; chunks too big
+ *     for it are sorted on disk.</li>
+ *     <li>Disk: {@code ioStreams} is how many large sequential reads or writes run at once. Generation always has one;
+ *     sorting reads and writes chunks on the rest.</li>
+ * </ul>
+ * The output is the same as {@code Main.writeChunkedFiles} followed by {@code Main.sortChunkedFiles}.
+ */
+public class BuildPipeline implements AutoCloseable {
+    private final int hashThreads;
+    private final Meter hashRate;
+    private final ForkJoinPool sortPool;
+    private final SortScheduler scheduler;
+    // hands generated chunks to the scheduler in order, waiting for memory so generation doesn't have to
+    private final ExecutorService feeder;
+
+    public BuildPipeline(int hashThreads, int sortThreads, long memoryBudgetBytes, int ioStreams,
+                         Meter hashRate, Meter readMeter, Timer sortTimer, Meter writeMeter) {
+        if (hashThreads < 1 || sortThreads < 1) {
+            throw new IllegalArgumentException("Needs at least 1 hash thread and 1 sort thread");
+        }
+        if (ioStreams < 2) {
+            throw new IllegalArgumentException("Needs at least 2 I/O streams, one to generate and one to sort");
+        }
+        this.hashThreads = hashThreads;
+        this.hashRate = hashRate;
+        this.sortPool = new ForkJoinPool(sortThreads);
+        this.scheduler = new SortScheduler(memoryBudgetBytes, ioStreams - 1, sortPool, readMeter, sortTimer, writeMeter);
+        this.feeder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "build-feeder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getAvailableMegabytes() {
+        return scheduler.getAvailableMegabytes();
+    }
+
+    /**
+     * Generates and sorts chunk i of {@code ranges} into {@code filenames[i]}, and returns once every chunk is
+     * written. The first failure of any stage is thrown, after generation stops.
+     */
+    public void build(IpRange[] ranges, List<String> filenames) throws Exception {
+        if (ranges.length != filenames.size()) {
+            throw new IllegalArgumentException(ranges.length + " ranges but " + filenames.size() + " filenames");
+        }
+        List<Future<CompletableFuture<Void>>> sorts = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i++) {
+            // if a chunk failed to sort, stop now rather than generate the rest
+            for (Future<CompletableFuture<Void>> sort : sorts) {
+                if (sort.isDone() && sort.get().isCompletedExceptionally()) {
+                    sort.get().get();
+                }
+            }
+
+            String filename = filenames.get(i);
+            System.out.println(filename);
+            try (StorageWriter writer = new StorageWriter(filename, ranges[i].size() * PackedRecords.RECORD_SIZE)) {
+                new HashPipeline(ranges[i], hashThreads, hashRate).run(writer);
+            }
+            sorts.add(feeder.submit(() -> scheduler.submit(filename)));
+        }
+
+        for (Future<CompletableFuture<Void>> sort : sorts) {
+            sort.get().get();
+        }
+    }
+
+    /**
+     * Stops handing chunks to the scheduler and waits for the sorts already running, so a failed build doesn't leave a
+     * chunk half rewritten.
+     */
+    @Override
+    @SneakyThrows
+    public void close() {
+        feeder.shutdownNow();
+        feeder.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        scheduler.close();
+        sortPool.shutdown();
+    }
+}
@@ -0,0 +1,238 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Read-through cache in front of another lookup, for traffic that asks about the same hashes over and over. Both
+ * answers are cached: the IP for hashes in the table, and "not found" for hashes that aren't.
+ * <p>
+ * Bounded by entry count with segmented LRU eviction: a new entry starts on probation, and moves to the protected
+ * segment (80% of the room) when it is hit again, so a burst of one-off lookups can only push out other one-offs. The
+ * cache is split into stripes by hash, each with its own lock, so concurrent lookups rarely contend.
+ * <p>
+ * Entries live in primitive arrays, not objects: the hash's sort keys (two longs and an int), the IP as an int, and
+ * index links for the LRU lists, found through an open-addressed table of slot numbers. That's about 40 bytes an entry,
+ * nothing allocated per lookup, and nothing for the garbage collector to trace however big the cache is.
+ * <p>
+ * Registers cacheHits and cacheMisses counters and a cacheSize gauge on the given registry.
+ */
+public class CachingLookup implements HashLookup {
+    private static final int STRIPES = 16;
+    private static final long NOT_FOUND = -1;
+
+    private final HashLookup delegate;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Counter hits;
+    private final Counter misses;
+
+    public CachingLookup(HashLookup delegate, int maximumEntries, MetricRegistry metrics) {
+        this.delegate = delegate;
+        int perStripe = Math.max(1, maximumEntries / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+        hits = metrics.counter("cacheHits");
+        misses = metrics.counter("cacheMisses");
+        metrics.register("cacheSize", (Gauge<Integer>) this::size);
+    }
+
+    @Override
+    public IpAddress search(byte[] hash) throws InterruptedException {
+        long hash0 = PackedRecords.sortKeyOf(hash, 0);
+        long hash1 = PackedRecords.sortKeyOf(hash, 8);
+        int hash2 = PackedRecords.sortKeyOfInt(hash, 16);
+        Stripe stripe = stripes[(int) (hash0 >>> 60)];
+        long cached = stripe.get(hash0, hash1, hash2);
+        if (cached != Stripe.ABSENT) {
+            hits.inc();
+            return cached == NOT_FOUND ? null : IpAddress.fromLong(cached);
+        }
+
+        misses.inc();
+        IpAddress ip = delegate.search(hash);
+        stripe.put(hash0, hash1, hash2, ip == null ? NOT_FOUND : ip.toLong());
+        return ip;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+
+    /**
+     * One segmented LRU over a fixed number of entry slots. Each segment is a circular doubly linked list of slots,
+     * eldest first, threaded through {@code prev} and {@code next}; the two extra slots at the end are the lists'
+     * sentinels. {@code table} maps a hash to its slot (plus one, so 0 is empty) by linear probing.
+     */
+    private static class Stripe {
+        static final long ABSENT = -2;
+        private static final byte PROTECTED = 1;
+        private static final byte FOUND = 2;
+
+        private final int probationCapacity;
+        private final int protectedCapacity;
+        private final int probationList;
+        private final int protectedList;
+        private final long[] hash0s;
+        private final long[] hash1s;
+        private final int[] hash2s;
+        private final int[] ips;
+        private final byte[] flags;
+        private final int[] prev;
+        private final int[] next;
+        private final int[] table;
+        private final int mask;
+        private int used;
+        private int probationSize;
+        private int protectedSize;
+
+        Stripe(int capacity) {
+            protectedCapacity = capacity * 4 / 5;
+            probationCapacity = Math.max(1, capacity - protectedCapacity);
+            int slots = probationCapacity + protectedCapacity;
+            hash0s = new long[slots];
+            hash1s = new long[slots];
+            hash2s = new int[slots];
+            ips = new int[slots];
+            flags = new byte[slots];
+            prev = new int[slots + 2];
+            next = new int[slots + 2];
+            probationList = slots;
+            protectedList = slots + 1;
+            for (int list : new int[] {probationList, protectedList}) {
+                prev[list] = list;
+                next[list] = list;
+            }
+            // at most half full
+            table = new int[Integer.highestOneBit(Math.max(2, slots) - 1) << 2];
+            mask = table.length - 1;
+        }
+
+        synchronized long get(long hash0, long hash1, int hash2) {
+            int position = find(hash0, hash1, hash2);
+            if (position < 0) {
+                return ABSENT;
+            }
+            int slot = table[position] - 1;
+            if ((flags[slot] & PROTECTED) != 0) {
+                moveToTail(slot, protectedList);
+            } else if (protectedCapacity == 0) {
+                moveToTail(slot, probationList);
+            } else {
+                // promote, and make room by demoting the eldest protected entry; probation stays the same size
+                moveToTail(slot, protectedList);
+                flags[slot] |= PROTECTED;
+                probationSize--;
+                protectedSize++;
+                if (protectedSize > protectedCapacity) {
+                    int demoted = next[protectedList];
+                    moveToTail(demoted, probationList);
+                    flags[demoted] &= ~PROTECTED;
+                    protectedSize--;
+                    probationSize++;
+                }
+            }
+            return (flags[slot] & FOUND) != 0 ? ips[slot] & 0xFFFFFFFFL : NOT_FOUND;
+        }
+
+        synchronized void put(long hash0, long hash1, int hash2, long value) {
+            int position = find(hash0, hash1, hash2);
+            int slot;
+            if (position >= 0) {
+                // another thread got here first
+                slot = table[position] - 1;
+                moveToTail(slot, (flags[slot] & PROTECTED) != 0 ? protectedList : probationList);
+            } else {
+                if (probationSize == probationCapacity) {
+                    slot = next[probationList];
+                    unlink(slot);
+                    remove(slot);
+                    probationSize--;
+                } else {
+                    slot = used++;
+                }
+                hash0s[slot] = hash0;
+                hash1s[slot] = hash1;
+                hash2s[slot] = hash2;
+                flags[slot] = 0;
+                linkAtTail(slot, probationList);
+                probationSize++;
+                position = (int) hash1 & mask;
+                while (table[position] != 0) {
+                    position = (position + 1) & mask;
+                }
+                table[position] = slot + 1;
+            }
+            if (value == NOT_FOUND) {
+                flags[slot] &= ~FOUND;
+            } else {
+                flags[slot] |= FOUND;
+                ips[slot] = (int) value;
+            }
+        }
+
+        synchronized int size() {
+            return probationSize + protectedSize;
+        }
+
+        /**
+         * @return the table position holding the hash's slot, or -1
+         */
+        private int find(long hash0, long hash1, int hash2) {
+            // the bits of a SHA-1 digest are already well mixed
+            for (int position = (int) hash1 & mask; table[position] != 0; position = (position + 1) & mask) {
+                int slot = table[position] - 1;
+                if (hash1s[slot] == hash1 && hash0s[slot] == hash0 && hash2s[slot] == hash2) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Takes the slot out of the table, shifting back the entries probed past it so none are cut off.
+         */
+        private void remove(int slot) {
+            int hole = find(hash0s[slot], hash1s[slot], hash2s[slot]);
+            for (int position = (hole + 1) & mask; table[position] != 0; position = (position + 1) & mask) {
+                int home = (int) hash1s[table[position] - 1] & mask;
+                boolean reachable = hole <= position
+                        ? hole < home && home <= position
+                        : hole < home || home <= position;
+                if (!reachable) {
+                    table[hole] = table[position];
+                    hole = position;
+                }
+            }
+            table[hole] = 0;
+        }
+
+        private void moveToTail(int slot, int list) {
+            unlink(slot);
+            linkAtTail(slot, list);
+        }
+
+        private void unlink(int slot) {
+            next[prev[slot]] = next[slot];
+            prev[next[slot]] = prev[slot];
+        }
+
+        private void linkAtTail(int slot, int list) {
+            int tail = prev[list];
+            next[tail] = slot;
+            prev[slot] = tail;
+            next[slot] = list;
+            prev[list] = slot;
+        }
+    }
+}
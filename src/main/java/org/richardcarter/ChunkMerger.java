@@ -0,0 +1,92 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.richardcarter.PackedRecords.RECORD_SIZE;
+
+/**
+ * Merges sorted chunk files into one globally sorted table, streaming: a k-way merge (see {@link RecordMerger}) with a
+ * large read buffer per chunk, written out sequentially. The output is cut into segment files of at most
+ * {@code segmentRecords} entries, and a {@link SparseIndex} over all of them is written alongside, so a lookup
+ * (see {@link MergedSearcher}) is one in-memory index probe and one read, however many chunks the table came from.
+ */
+@RequiredArgsConstructor
+public class ChunkMerger {
+    private static final int READ_BUFFER_BYTES = 16 << 20;
+    private static final int WRITE_BUFFER_BYTES = 64 << 20;
+
+    private final List<String> chunkFilenames;
+    private final String segmentFilenamePattern;
+    private final String indexFilename;
+    private final long segmentRecords;
+    private final int stride;
+    private final Meter writeMeter;
+
+    /**
+     * @return the segment files written, in order
+     */
+    @SneakyThrows
+    public List<String> merge() {
+        List<RecordReader> readers = new ArrayList<>();
+        for (String chunkFilename : chunkFilenames) {
+            readers.add(new RecordReader(chunkFilename, READ_BUFFER_BYTES));
+        }
+
+        List<String> segmentFilenames = new ArrayList<>();
+        SparseIndex.Builder index = new SparseIndex.Builder(stride, segmentRecords);
+        ByteBuffer out = ByteBuffer.allocate(WRITE_BUFFER_BYTES / RECORD_SIZE * RECORD_SIZE);
+        FileChannel segment = null;
+        long inSegment = 0;
+        try (RecordMerger merger = new RecordMerger(readers)) {
+            RecordReader reader;
+            while ((reader = merger.next()) != null) {
+                if (segment == null || inSegment == segmentRecords) {
+                    if (segment != null) {
+                        flush(segment, out);
+                        segment.close();
+                    }
+                    String segmentFilename = String.format(segmentFilenamePattern, segmentFilenames.size());
+                    System.out.println(segmentFilename);
+                    segment = FileChannel.open(Path.of(segmentFilename),
+                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                    segmentFilenames.add(segmentFilename);
+                    inSegment = 0;
+                }
+                reader.copyTo(out);
+                index.add(reader.hash0());
+                inSegment++;
+                if (!out.hasRemaining()) {
+                    flush(segment, out);
+                }
+            }
+            if (segment != null) {
+                flush(segment, out);
+            }
+        } finally {
+            if (segment != null) {
+                segment.close();
+            }
+        }
+        index.build().write(indexFilename);
+        return segmentFilenames;
+    }
+
+    @SneakyThrows
+    private void flush(FileChannel channel, ByteBuffer out) {
+        out.flip();
+        writeMeter.mark(out.remaining());
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+}
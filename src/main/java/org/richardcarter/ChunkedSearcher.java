@@ -0,0 +1,99 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches every chunk file of a lookup table for a hash at the same time.
+ * Each chunk is sorted on its own, so any of them could hold the hash; searching them all in parallel and cancelling the
+ * rest on the first hit makes a lookup (hit or miss) cost about one chunk's search instead of N.
+ * <p>
+ * Opens one {@link BinarySearcher} per chunk up front and keeps them for the life of this object. Thread-safe; each
+ * search takes a thread per chunk, so it's built for a number of concurrent searches (one by default), and searches
+ * beyond that wait for each other's chunk searches.
+ */
+public class ChunkedSearcher implements HashLookup {
+    private final List<BinarySearcher> searchers;
+    private final ExecutorService executor;
+    private final Timer latency;
+
+    /**
+     * @param latency records how long each {@link #search} takes
+     */
+    public ChunkedSearcher(List<String> filenames, Timer latency) {
+        this(filenames, 1, latency);
+    }
+
+    /**
+     * @param concurrentSearches how many searches may run at once without queueing, e.g. a server's request threads
+     * @param latency            records how long each {@link #search} takes
+     */
+    public ChunkedSearcher(List<String> filenames, int concurrentSearches, Timer latency) {
+        if (concurrentSearches < 1) {
+            throw new IllegalArgumentException("concurrentSearches must be at least 1: " + concurrentSearches);
+        }
+        searchers = new ArrayList<>(filenames.size());
+        for (String filename : filenames) {
+            searchers.add(new BinarySearcher(filename, true));
+        }
+        executor = Executors.newFixedThreadPool(Math.max(1, searchers.size()) * concurrentSearches, runnable -> {
+            Thread thread = new Thread(runnable, "chunk-searcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.latency = latency;
+    }
+
+    /**
+     * Opens chunk files 0 until numChunks of the pattern, e.g. {@link Main#CHUNKED_FILENAME_PATTERN}.
+     */
+    public static ChunkedSearcher open(String filenamePattern, int numChunks, Timer latency) {
+        List<String> filenames = new ArrayList<>(numChunks);
+        for (int i = 0; i < numChunks; i++) {
+            filenames.add(String.format(filenamePattern, i));
+        }
+        return new ChunkedSearcher(filenames, latency);
+    }
+
+    @Override
+    public IpAddress search(byte[] targetHash) throws InterruptedException {
+        try (Timer.Context ignored = latency.time()) {
+            CompletionService<IpAddress> completionService = new ExecutorCompletionService<>(executor);
+            List<Future<IpAddress>> futures = new ArrayList<>(searchers.size());
+            try {
+                for (BinarySearcher searcher : searchers) {
+                    futures.add(completionService.submit(() -> searcher.search(targetHash)));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    IpAddress found = completionService.take().get();
+                    if (found != null) {
+                        return found;
+                    }
+                }
+                return null;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                for (Future<IpAddress> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        executor.shutdownNow();
+        for (BinarySearcher searcher : searchers) {
+            searcher.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.richardcarter;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+import static org.richardcarter.CompactStorageWriter.RECORD_SIZE;
+
+/**
+ * Searches a sorted compact table file (see {@link CompactStorageWriter}).
+ * Binary searches for the first entry with the target's fingerprint, then recomputes the hash of each entry with that
+ * fingerprint until one matches; with a 4 byte fingerprint there's about one false candidate per lookup.
+ * Memory-mapped and thread-safe, like {@link BinarySearcher}.
+ */
+public class CompactSearcher implements HashLookup {
+    @Getter
+    private final String filename;
+    private final MappedFile file;
+    @Getter
+    private final long countEntries;
+
+    public CompactSearcher(String filename) {
+        this.filename = filename;
+        this.file = new MappedFile(filename);
+        if (file.getLength() % RECORD_SIZE != 0) {
+            throw new IllegalArgumentException(filename + " length is not a multiple of " + RECORD_SIZE);
+        }
+        this.countEntries = file.getLength() / RECORD_SIZE;
+    }
+
+    @Override
+    public IpAddress search(byte[] targetHash) {
+        int target = PackedRecords.sortKeyOfInt(targetHash, 0);
+
+        long left = 0;
+        long right = countEntries;
+        while (left < right) {
+            long idx = (left + right) >>> 1;
+            if (Integer.compareUnsigned(fingerprintAt(idx), target) < 0) {
+                left = idx + 1;
+            } else {
+                right = idx;
+            }
+        }
+
+        for (long idx = left; idx < countEntries && fingerprintAt(idx) == target; idx++) {
+            IpAddress candidate = IpAddress.fromLong(file.getInt(idx * RECORD_SIZE) & 0xFFFFFFFFL);
+            if (Arrays.equals(Hasher.calculateHash(candidate), targetHash)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private int fingerprintAt(long idx) {
+        return PackedRecords.toSortKey(file.getInt(idx * RECORD_SIZE + PackedRecords.IP_SIZE));
+    }
+
+    @Override
+    public void close() throws Exception {
+        file.close();
+    }
+}
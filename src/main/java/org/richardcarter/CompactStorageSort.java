@@ -0,0 +1,68 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.richardcarter.CompactStorageWriter.RECORD_SIZE;
+
+/**
+ * Sorts a compact table file (see {@link CompactStorageWriter}) in memory by fingerprint.
+ * Each entry packs into a single long, fingerprint in the upper half and IP in the lower, so sorting the entries is
+ * just sorting a long[]; 8 bytes of memory per entry.
+ */
+@RequiredArgsConstructor
+public class CompactStorageSort {
+
+    private final String filename;
+    private final Meter readMeter;
+    private final Timer sortTimer;
+    private final Meter writeMeter;
+
+    @SneakyThrows
+    public void sort() {
+        System.out.println(filename);
+        long size = Files.size(Path.of(filename));
+        if ((size % RECORD_SIZE) != 0) {
+            throw new IllegalArgumentException("File not divisible by " + RECORD_SIZE + ": " + filename);
+        }
+        long entryCount = size / RECORD_SIZE;
+        if (entryCount <= 0 || entryCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Unexpected entryCount: " + entryCount);
+        }
+
+        // Stored so that signed long order is table order: the fingerprint's sort key with its top bit flipped back.
+        long[] entries = new long[(int) entryCount];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 20))) {
+            for (int i = 0; i < entries.length; i++) {
+                long ip = in.readInt() & 0xFFFFFFFFL;
+                long fingerprint = PackedRecords.toSortKey(in.readInt()) ^ Integer.MIN_VALUE;
+                entries[i] = (fingerprint << 32) | ip;
+                readMeter.mark(RECORD_SIZE);
+            }
+        }
+
+        try (Timer.Context ignored = sortTimer.time()) {
+            Arrays.parallelSort(entries);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 20))) {
+            for (long entry : entries) {
+                out.writeInt((int) entry);
+                out.writeInt(PackedRecords.toSortKey((int) (entry >>> 32) ^ Integer.MIN_VALUE));
+                writeMeter.mark(RECORD_SIZE);
+            }
+        }
+    }
+}
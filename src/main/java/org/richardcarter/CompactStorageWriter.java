@@ -0,0 +1,47 @@
+package org.richardcarter;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.io.*;
+
+/**
+ * Writes the compact table format: each entry is the 4 byte IP followed by only the first
+ * {@link #FINGERPRINT_SIZE} bytes of its hash, 8 bytes instead of 24. Once sorted, the fingerprint narrows a lookup
+ * down to one or two candidates, and {@link CompactSearcher} confirms them by recomputing their hashes.
+ * The whole table is about 34 GB instead of 100 GB.
+ */
+public class CompactStorageWriter implements AutoCloseable {
+    public static final int FINGERPRINT_SIZE = 4;
+    public static final int RECORD_SIZE = PackedRecords.IP_SIZE + FINGERPRINT_SIZE;
+
+    private final DataOutputStream output;
+    @Getter
+    private long fileSize;
+
+    @SneakyThrows
+    public CompactStorageWriter(String filename) {
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+        fileSize = 0;
+    }
+
+    @Override
+    public void close() throws Exception {
+        output.close();
+    }
+
+    @SneakyThrows
+    public void write(IpAddress ip, byte[] hash) {
+        write(ip.toInt(), hash, 0);
+    }
+
+    /**
+     * Writes {@code ip} followed by the fingerprint of the hash at {@code hashes[offset]}.
+     */
+    @SneakyThrows
+    public void write(int ip, byte[] hashes, int offset) {
+        output.writeInt(ip);
+        output.write(hashes, offset, FINGERPRINT_SIZE);
+        fileSize += RECORD_SIZE;
+    }
+}
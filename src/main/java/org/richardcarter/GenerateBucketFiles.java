@@ -0,0 +1,61 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Generates the entries for a range of IPs and routes each one into its hash-prefix bucket, instead of writing them
+ * in IP order like {@link GenerateChunkFile}. Several of these run in parallel over different IP ranges and share
+ * one {@link BucketWriter}.
+ * <p>
+ * Each bucket ends up a small unsorted file that can be sorted on its own in memory, and together the sorted buckets
+ * are one globally sorted table; no full-table sort pass is needed afterwards.
+ */
+@RequiredArgsConstructor
+public class GenerateBucketFiles implements Runnable {
+    private static final int BUFFER_BYTES = PackedRecords.RECORD_SIZE * 1024;
+
+    private final IpRange range;
+    private final BucketWriter writer;
+    private final Meter meter;
+
+    @Override
+    public void run() {
+        if (range.size() == 0) {
+            throw new IllegalArgumentException("empty range " + range);
+        }
+        long end = range.getEndExclusive();
+        ByteBuffer[] buffers = new ByteBuffer[writer.getCountBuckets()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.allocate(BUFFER_BYTES);
+        }
+
+        byte[] hashes = new byte[GenerateChunkFile.BATCH * PackedRecords.HASH_SIZE];
+        for (long ip = range.getStartInclusive(); ip < end; ip += GenerateChunkFile.BATCH) {
+            int count = (int) Math.min(GenerateChunkFile.BATCH, end - ip);
+            Hasher.hashRange((int) ip, count, hashes);
+            for (int i = 0; i < count; i++) {
+                int offset = i * PackedRecords.HASH_SIZE;
+                int bucket = writer.bucketOf(hashes, offset);
+                ByteBuffer buffer = buffers[bucket];
+                buffer.putInt((int) ip + i).put(hashes, offset, PackedRecords.HASH_SIZE);
+                if (!buffer.hasRemaining()) {
+                    flush(bucket, buffer);
+                }
+            }
+            meter.mark(count);
+        }
+
+        for (int bucket = 0; bucket < buffers.length; bucket++) {
+            flush(bucket, buffers[bucket]);
+        }
+    }
+
+    private void flush(int bucket, ByteBuffer buffer) {
+        buffer.flip();
+        writer.write(bucket, buffer);
+        buffer.clear();
+    }
+}
@@ -1,34 +1,191 @@
 package org.richardcarter;
 
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
 
-@RequiredArgsConstructor
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Generates one chunk file: the records of a range of IPs, in IP order.
+ * <p>
+ * Resumable. Every {@link #CHECKPOINT_IPS} IPs the file is synced to disk and the next IP is saved in a checkpoint
+ * sidecar ({@link #checkpointFilenameFor}), replaced atomically. If a run is cut off, the next run over the same range
+ * and file checks that the last checkpointed record is intact and appends from there instead of starting over. The
+ * checkpoint is kept once the chunk is done, so a rerun skips it; delete it to force a regenerate. Sorting a chunk
+ * rewrites it, so the sorts delete its checkpoint ({@link #deleteCheckpoint}).
+ */
 public class GenerateChunkFile implements Runnable {
-    private final IpAddress startInclusive;
-    private final IpAddress endExclusive;
+    // IPs hashed per Hasher.hashRange call
+    static final int BATCH = 4096;
+    // ~400 MB of records between checkpoints
+    public static final long CHECKPOINT_IPS = 1L << 24;
+
+    private static final Meter HASHES = Metrics.meter(GenerateChunkFile.class, "hashes");
+    private static final Timer HASH_TIME = Metrics.timer(GenerateChunkFile.class, "hashTime");
+    private static final Timer WRITE_TIME = Metrics.timer(GenerateChunkFile.class, "writeTime");
+
+    private final IpRange range;
     private final String filename;
     private final Meter meter;
+    private final long checkpointIps;
 
+    // the next IP to be hashed
     @Getter
-    private IpAddress currentIp;
+    private volatile long currentIp;
+
+    public GenerateChunkFile(IpRange range, String filename, Meter meter) {
+        this(range, filename, meter, CHECKPOINT_IPS);
+    }
+
+    /**
+     * @param checkpointIps IPs between checkpoints; a multiple of {@link #BATCH}
+     */
+    GenerateChunkFile(IpRange range, String filename, Meter meter, long checkpointIps) {
+        if (checkpointIps <= 0 || checkpointIps % BATCH != 0) {
+            throw new IllegalArgumentException("checkpointIps must be a positive multiple of " + BATCH);
+        }
+        this.range = range;
+        this.filename = filename;
+        this.meter = meter;
+        this.checkpointIps = checkpointIps;
+    }
+
+    public static String checkpointFilenameFor(String filename) {
+        return filename + ".ckpt";
+    }
 
     @Override
     public void run() {
-        if (startInclusive.compareTo(endExclusive) >= 0) {
-            throw new IllegalArgumentException("start >= end");
-        }
-        try (StorageWriter writer = new StorageWriter(filename)) {
-            currentIp = startInclusive;
-            while (!currentIp.equals(endExclusive)) {
-                byte[] hash = Hasher.calculateHash(currentIp);
-                writer.write(currentIp, hash);
-                meter.mark();
-                currentIp = currentIp.increment();
+        if (range.size() == 0) {
+            throw new IllegalArgumentException("empty range " + range);
+        }
+        long start = range.getStartInclusive();
+        long end = range.getEndExclusive();
+        long resumeAt = resumePoint();
+        currentIp = resumeAt;
+        if (resumeAt == end) {
+            System.out.println(filename + " is already complete");
+            return;
+        }
+        if (resumeAt > start) {
+            System.out.println(filename + " resuming at " + IpAddress.fromLong(resumeAt));
+        } else {
+            // don't let an old checkpoint vouch for the file while it's being rewritten, nor an old sort's index
+            deleteCheckpoint(filename);
+            deleteIndex();
+        }
+
+        byte[] hashes = new byte[BATCH * PackedRecords.HASH_SIZE];
+        try (StorageWriter writer = new StorageWriter(filename, range.size() * PackedRecords.RECORD_SIZE,
+                (resumeAt - start) * PackedRecords.RECORD_SIZE)) {
+            for (long ip = resumeAt; ip < end; ip += BATCH) {
+                int count = (int) Math.min(BATCH, end - ip);
+                try (Timer.Context ignored = HASH_TIME.time()) {
+                    Hasher.hashRange((int) ip, count, hashes);
+                }
+                try (Timer.Context ignored = WRITE_TIME.time()) {
+                    for (int i = 0; i < count; i++) {
+                        writer.write((int) ip + i, hashes, i * PackedRecords.HASH_SIZE);
+                    }
+                }
+                meter.mark(count);
+                HASHES.mark(count);
+                currentIp = ip + count;
+                if ((currentIp - start) % checkpointIps == 0 && currentIp < end) {
+                    writer.sync();
+                    writeCheckpoint(currentIp);
+                }
             }
+            writer.sync();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        writeCheckpoint(end);
+    }
+
+    /**
+     * @return the first IP not yet durably in the file: the checkpointed IP if the checkpoint is for this range and
+     * the file's last checkpointed record checks out, otherwise the start of the range
+     */
+    @SneakyThrows
+    private long resumePoint() {
+        long start = range.getStartInclusive();
+        Path checkpoint = Path.of(checkpointFilenameFor(filename));
+        if (!Files.exists(checkpoint) || !Files.exists(Path.of(filename))) {
+            return start;
+        }
+        long next;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(checkpoint.toFile()))) {
+            if (in.readLong() != start || in.readLong() != range.getEndExclusive()) {
+                System.out.println(checkpoint + " is for another range; starting over");
+                return start;
+            }
+            next = in.readLong();
+        }
+        if (next <= start || next > range.getEndExclusive()) {
+            return start;
+        }
+
+        // the last record before the checkpoint must be there and be the right one
+        long lastRecord = (next - 1 - start) * PackedRecords.RECORD_SIZE;
+        byte[] record = new byte[PackedRecords.RECORD_SIZE];
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            if (file.length() < lastRecord + PackedRecords.RECORD_SIZE) {
+                System.out.println(filename + " is shorter than its checkpoint; starting over");
+                return start;
+            }
+            file.seek(lastRecord);
+            file.readFully(record);
+        }
+        byte[] expected = new byte[PackedRecords.RECORD_SIZE];
+        IpAddress.toBytes((int) (next - 1), expected, 0);
+        Hasher.calculateHash((int) (next - 1), expected, PackedRecords.IP_SIZE);
+        if (!Arrays.equals(record, expected)) {
+            System.out.println(filename + " doesn't match its checkpoint; starting over");
+            return start;
+        }
+        return next;
+    }
+
+    /**
+     * Forgets a chunk's generation progress, for when the file is about to be rewritten by something else.
+     */
+    @SneakyThrows
+    public static void deleteCheckpoint(String filename) {
+        Files.deleteIfExists(Path.of(checkpointFilenameFor(filename)));
+    }
+
+    @SneakyThrows
+    private void deleteIndex() {
+        Files.deleteIfExists(Path.of(PrefixIndex.filenameFor(filename)));
+    }
+
+    /**
+     * Records that every IP before {@code next} is in the file. Written to a temporary file and moved over the old
+     * checkpoint, so a crash leaves either the old checkpoint or the new one.
+     */
+    @SneakyThrows
+    private void writeCheckpoint(long next) {
+        Path checkpoint = Path.of(checkpointFilenameFor(filename));
+        Path temporary = Path.of(checkpointFilenameFor(filename) + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeLong(range.getStartInclusive());
+            out.writeLong(range.getEndExclusive());
+            out.writeLong(next);
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 }
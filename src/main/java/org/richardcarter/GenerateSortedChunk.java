@@ -0,0 +1,70 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import lombok.RequiredArgsConstructor;
+
+import java.util.stream.LongStream;
+
+/**
+ * Generates a chunk of the table already sorted: hashes the chunk's IP range straight into a {@link PackedRecords}
+ * buffer, sorts it in memory and writes the sorted file (and its {@link PrefixIndex}) in one sequential pass.
+ * That's one write of each byte instead of the write, read and rewrite of {@link GenerateChunkFile} followed by a sort.
+ * <p>
+ * Needs {@link #memoryNeeded} bytes of heap while it runs; hashing and sorting both use every core.
+ */
+@RequiredArgsConstructor
+public class GenerateSortedChunk implements Runnable {
+    private final IpRange range;
+    private final String filename;
+    private final Meter hashRate;
+    private final Timer sortTimer;
+    private final Meter writeMeter;
+
+    public static long memoryNeeded(IpRange range) {
+        return range.size() * PackedRecords.RECORD_SIZE;
+    }
+
+    /**
+     * How many chunks to split the IPv4 space into so that each one fits in {@code memoryBudgetBytes} (and in one
+     * {@link PackedRecords}): at least {@code minChunks}, more if the budget is smaller than the table over that many.
+     */
+    public static int chunksFor(long memoryBudgetBytes, int minChunks) {
+        long maxEntries = Math.min(Integer.MAX_VALUE, memoryBudgetBytes / PackedRecords.RECORD_SIZE);
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Memory budget too small for a chunk: " + memoryBudgetBytes);
+        }
+        long chunks = (IpRange.ALL.size() + maxEntries - 1) / maxEntries;
+        return (int) Math.max(minChunks, chunks);
+    }
+
+    @Override
+    public void run() {
+        if (range.size() == 0 || range.size() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Unexpected range size: " + range.size());
+        }
+        System.out.println(filename);
+        int size = (int) range.size();
+        PackedRecords records = new PackedRecords(size);
+
+        int batch = GenerateChunkFile.BATCH;
+        LongStream.range(0, (size + batch - 1) / batch).parallel().forEach(block -> {
+            int first = (int) block * batch;
+            int count = Math.min(batch, size - first);
+            int startIp = (int) (range.getStartInclusive() + first);
+            byte[] hashes = new byte[count * PackedRecords.HASH_SIZE];
+            Hasher.hashRange(startIp, count, hashes);
+            for (int i = 0; i < count; i++) {
+                records.set(first + i, startIp + i, hashes, i * PackedRecords.HASH_SIZE);
+            }
+            hashRate.mark(count);
+        });
+
+        try (Timer.Context ignored = sortTimer.time()) {
+            records.sort();
+        }
+
+        records.write(filename, writeMeter);
+        PrefixIndex.fromRecords(records, PrefixIndex.DEFAULT_BITS).write(PrefixIndex.filenameFor(filename));
+    }
+}
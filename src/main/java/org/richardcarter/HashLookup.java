@@ -0,0 +1,12 @@
+package org.richardcarter;
+
+/**
+ * Something that can reverse a hash: one of the table searchers, or a wrapper around one.
+ */
+public interface HashLookup extends AutoCloseable {
+
+    /**
+     * @return the IP whose hash this is, or null if it isn't in the table
+     */
+    IpAddress search(byte[] hash) throws InterruptedException;
+}
@@ -0,0 +1,146 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.richardcarter.PackedRecords.HASH_SIZE;
+import static org.richardcarter.PackedRecords.IP_SIZE;
+import static org.richardcarter.PackedRecords.RECORD_SIZE;
+
+/**
+ * Generates a range of the table into a single file, in IP order, with hashing spread over several worker threads.
+ * <p>
+ * The range is cut into blocks of {@link #BATCH_IPS} IPs, dealt out round-robin, so block {@code b} belongs to worker
+ * {@code b % workers}. Each worker hashes its blocks straight into the slots of its own single-producer/single-consumer
+ * ring, and the writer (the calling thread) takes blocks from the rings in the same round-robin order, which is IP
+ * order. The slots are allocated once; nothing is allocated or locked per IP or per block.
+ */
+@RequiredArgsConstructor
+public class HashPipeline {
+    public static final int BATCH_IPS = 1 << 14;
+    private static final int RING_SLOTS = 8;
+
+    private final IpRange range;
+    private final int workers;
+    private final Meter hashRate;
+
+    private volatile Throwable failure;
+    private volatile boolean stopped;
+
+    public void run(StorageWriter writer) throws InterruptedException {
+        long blocks = (range.size() + BATCH_IPS - 1) / BATCH_IPS;
+        Ring[] rings = new Ring[workers];
+        Thread[] threads = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            rings[i] = new Ring();
+            int worker = i;
+            threads[i] = new Thread(() -> hashBlocks(worker, blocks, rings[worker]), "hash-worker-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        try {
+            for (long block = 0; block < blocks; block++) {
+                Ring ring = rings[(int) (block % workers)];
+                int slot;
+                for (int attempt = 0; (slot = ring.tryPeek()) < 0; attempt++) {
+                    idle(attempt);
+                }
+                writer.write(ring.slots[slot], 0, ring.lengths[slot]);
+                ring.release();
+            }
+        } finally {
+            stopped = true;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    private void hashBlocks(int worker, long blocks, Ring ring) {
+        try {
+            byte[] hashes = new byte[BATCH_IPS * HASH_SIZE];
+            for (long block = worker; block < blocks; block += workers) {
+                long start = range.getStartInclusive() + block * BATCH_IPS;
+                int count = (int) Math.min(BATCH_IPS, range.getEndExclusive() - start);
+                Hasher.hashRange((int) start, count, hashes);
+
+                int slot;
+                for (int attempt = 0; (slot = ring.tryClaim()) < 0; attempt++) {
+                    idle(attempt);
+                }
+                byte[] records = ring.slots[slot];
+                for (int i = 0; i < count; i++) {
+                    IpAddress.toBytes((int) start + i, records, i * RECORD_SIZE);
+                    System.arraycopy(hashes, i * HASH_SIZE, records, i * RECORD_SIZE + IP_SIZE, HASH_SIZE);
+                }
+                ring.publish(count * RECORD_SIZE);
+                hashRate.mark(count);
+            }
+        } catch (Throwable t) {
+            failure = t;
+        }
+    }
+
+    /**
+     * Waits a little for the other side of a ring: spins briefly, then yields, then parks for a few microseconds, so a
+     * stalled side doesn't burn a core that a hashing thread could use.
+     */
+    private void idle(int attempt) {
+        if (failure != null) {
+            throw new RuntimeException("hash worker failed", failure);
+        }
+        if (stopped) {
+            throw new IllegalStateException("pipeline stopped");
+        }
+        if (attempt < 100) {
+            Thread.onSpinWait();
+        } else if (attempt < 1000) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    /**
+     * Fixed ring of record buffers between one worker and the writer. Each side only writes its own counter, with
+     * release semantics, after it is done with the slot, so the other side sees the slot's contents.
+     */
+    private static class Ring {
+        final byte[][] slots = new byte[RING_SLOTS][BATCH_IPS * RECORD_SIZE];
+        final int[] lengths = new int[RING_SLOTS];
+        // next slot the writer takes
+        private final AtomicLong head = new AtomicLong();
+        // next slot the worker fills
+        private final AtomicLong tail = new AtomicLong();
+
+        /**
+         * Producer side: the next slot to fill, or -1 if the ring is full.
+         */
+        int tryClaim() {
+            long t = tail.get();
+            return t - head.get() < RING_SLOTS ? (int) (t % RING_SLOTS) : -1;
+        }
+
+        void publish(int length) {
+            long t = tail.get();
+            lengths[(int) (t % RING_SLOTS)] = length;
+            tail.lazySet(t + 1);
+        }
+
+        /**
+         * Consumer side: the next filled slot, or -1 if the ring is empty.
+         */
+        int tryPeek() {
+            long h = head.get();
+            return h < tail.get() ? (int) (h % RING_SLOTS) : -1;
+        }
+
+        void release() {
+            head.lazySet(head.get() + 1);
+        }
+    }
+}
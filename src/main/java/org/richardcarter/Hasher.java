@@ -1,21 +1,51 @@
 package org.richardcarter;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-
 public class Hasher {
 
     private static final String SALT = "SALT GOES HERE";
 
-    private static final ThreadLocal<MessageDigest> md = ThreadLocal.withInitial(() -> {
-        try {
-            return MessageDigest.getInstance("SHA-1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
-    });
+    // Same digest as MessageDigest SHA-1 over ip.toBytesPlusSalt(SALT), but with no garbage per hash.
+    private static final ThreadLocal<Sha1IpHasher> sha1 = ThreadLocal.withInitial(() -> new Sha1IpHasher(SALT));
+
+    // Below this many lanes per vector the Vector API path is slower than the scalar one, e.g. where the preferred
+    // species is narrow because the CPU has no wide SIMD units for the JIT to compile it to.
+    static final int MIN_VECTOR_LANES = 4;
+    // Sha1Lanes can only be loaded when the JVM was started with --add-modules jdk.incubator.vector.
+    private static final boolean VECTORIZED =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                    && Sha1Lanes.LANES >= MIN_VECTOR_LANES;
+    private static final ThreadLocal<Sha1Lanes> lanes =
+            VECTORIZED ? ThreadLocal.withInitial(() -> new Sha1Lanes(SALT)) : null;
 
     public static byte[] calculateHash(IpAddress ip) {
-        return md.get().digest(ip.toBytesPlusSalt(SALT));
+        byte[] hash = new byte[PackedRecords.HASH_SIZE];
+        calculateHash((int) ip.toLong(), hash, 0);
+        return hash;
+    }
+
+    /**
+     * Hashes {@code ip} (an unsigned 32-bit IPv4 address) into {@code out} at {@code offset}; allocates nothing.
+     */
+    public static void calculateHash(int ip, byte[] out, int offset) {
+        sha1.get().hash(ip, out, offset);
+    }
+
+    /**
+     * Hashes the {@code count} consecutive IPs starting at {@code startIp} and writes their 20 byte hashes one after
+     * another to {@code out}. Uses {@link Sha1Lanes} for as many full vectors of IPs as possible when the Vector API is
+     * available and wide enough, and {@link Sha1IpHasher} for the rest.
+     */
+    public static void hashRange(int startIp, int count, byte[] out) {
+        int i = 0;
+        if (VECTORIZED) {
+            Sha1Lanes engine = lanes.get();
+            for (; i + Sha1Lanes.LANES <= count; i += Sha1Lanes.LANES) {
+                engine.hash(startIp + i, Sha1Lanes.LANES, out, i * PackedRecords.HASH_SIZE);
+            }
+        }
+        Sha1IpHasher scalar = sha1.get();
+        for (; i < count; i++) {
+            scalar.hash(startIp + i, out, i * PackedRecords.HASH_SIZE);
+        }
     }
 }
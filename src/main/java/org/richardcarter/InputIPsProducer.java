@@ -7,21 +7,18 @@ import java.util.concurrent.BlockingQueue;
 @RequiredArgsConstructor
 public class InputIPsProducer implements Runnable {
 
-    private final IpAddress startIp;
-    private final IpAddress maxIp;
+    private final IpRange range;
     private final BlockingQueue<IpAddress> ipQueue;
 
     @Override
     public void run() {
-        IpAddress ip = startIp;
-        while (ip != maxIp) {
+        for (long ip = range.getStartInclusive(); ip < range.getEndExclusive(); ip++) {
             try {
-                ipQueue.put(ip);
+                ipQueue.put(IpAddress.fromLong(ip));
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
             }
-            ip = ip.increment();
         }
     }
 }
@@ -46,6 +46,23 @@ public class IpAddress implements Comparable<IpAddress> {
         return new byte[] {(byte) oct1, (byte) oct2, (byte) oct3, (byte) oct4};
     }
 
+    /**
+     * The address as an unsigned 32-bit value.
+     */
+    public int toInt() {
+        return (oct1 << 24) | (oct2 << 16) | (oct3 << 8) | oct4;
+    }
+
+    /**
+     * Writes the 4 octets of {@code ip} (an unsigned 32-bit value) to {@code out} at {@code offset}.
+     */
+    public static void toBytes(int ip, byte[] out, int offset) {
+        out[offset] = (byte) (ip >>> 24);
+        out[offset + 1] = (byte) (ip >>> 16);
+        out[offset + 2] = (byte) (ip >>> 8);
+        out[offset + 3] = (byte) ip;
+    }
+
     public byte[] toBytesPlusSalt(String salt) {
         return (this + salt).getBytes(StandardCharsets.UTF_8);
     }
@@ -59,6 +76,10 @@ public class IpAddress implements Comparable<IpAddress> {
         );
     }
 
+    public static IpAddress fromInt(int ip) {
+        return new IpAddress(ip >>> 24, (ip >>> 16) & 0xFF, (ip >>> 8) & 0xFF, ip & 0xFF);
+    }
+
     public static IpAddress fromByteArray(byte[] ip) {
         return new IpAddress(ip[0] & 0xFF, ip[1] & 0xFF, ip[2] & 0xFF, ip[3] & 0xFF);
     }
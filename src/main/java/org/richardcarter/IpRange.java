@@ -0,0 +1,128 @@
+package org.richardcarter;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A range of IPv4 addresses, {@code [startInclusive, endExclusive)}, as plain numbers so the table can be walked
+ * without an {@link IpAddress} per step. Bounds are longs so that the range can run up to and including
+ * 255.255.255.255; the addresses themselves are handed out as ints holding the unsigned 32-bit value.
+ */
+@Getter
+@EqualsAndHashCode
+public class IpRange {
+    public static final long END = 1L << 32;
+    public static final IpRange ALL = new IpRange(0, END);
+
+    private final long startInclusive;
+    private final long endExclusive;
+
+    public IpRange(long startInclusive, long endExclusive) {
+        if (startInclusive < 0 || endExclusive > END || startInclusive > endExclusive) {
+            throw new IllegalArgumentException("[" + startInclusive + ", " + endExclusive + ")");
+        }
+        this.startInclusive = startInclusive;
+        this.endExclusive = endExclusive;
+    }
+
+    public static IpRange of(IpAddress startInclusive, IpAddress endExclusive) {
+        return new IpRange(startInclusive.toLong(), endExclusive.toLong());
+    }
+
+    public long size() {
+        return endExclusive - startInclusive;
+    }
+
+    public boolean contains(int ip) {
+        long l = ip & 0xFFFFFFFFL;
+        return l >= startInclusive && l < endExclusive;
+    }
+
+    /**
+     * Divides this range into {@code parts} consecutive ranges whose sizes differ by at most one.
+     */
+    public IpRange[] split(int parts) {
+        IpRange[] ranges = new IpRange[parts];
+        for (int i = 0; i < parts; i++) {
+            ranges[i] = new IpRange(startInclusive + size() * i / parts, startInclusive + size() * (i + 1) / parts);
+        }
+        return ranges;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (long ip = startInclusive; ip < endExclusive; ip++) {
+            action.accept((int) ip);
+        }
+    }
+
+    /**
+     * Splits in halves, so a parallel stream (or a fork-join task driving it by hand) divides the work evenly.
+     */
+    public Spliterator.OfInt spliterator() {
+        return new RangeSpliterator(startInclusive, endExclusive);
+    }
+
+    public IntStream stream() {
+        return StreamSupport.intStream(spliterator(), false);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + IpAddress.fromLong(startInclusive) + ", "
+                + (endExclusive == END ? "end" : IpAddress.fromLong(endExclusive).toString()) + ")";
+    }
+
+    private static class RangeSpliterator implements Spliterator.OfInt {
+        private long next;
+        private final long end;
+
+        RangeSpliterator(long next, long end) {
+            this.next = next;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (next >= end) {
+                return false;
+            }
+            action.accept((int) next++);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            long ip = next;
+            next = end;
+            for (; ip < end; ip++) {
+                action.accept((int) ip);
+            }
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            long mid = next + (end - next) / 2;
+            if (mid == next) {
+                return null;
+            }
+            RangeSpliterator prefix = new RangeSpliterator(next, mid);
+            next = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running lookup service over HTTP, so lookups don't each pay for a JVM start and for opening the table.
+ * The lookup (usually the chunk searchers, behind a bloom filter and a cache) is opened once and shared.
+ * <ul>
+ *     <li>{@code GET /lookup?hash=<40 hex digits>} answers with the IP, or 404 if the hash isn't in the table.</li>
+ *     <li>{@code POST /lookup} with one hex hash per line answers with a line per hash, in order: the hash, a space,
+ *     and the IP, or {@code -} if it isn't in the table.</li>
+ * </ul>
+ * Malformed hashes get a 400. Registers a lookupLatency timer (per hash; its snapshot has the p50 and p99, its rate is
+ * the lookups per second; lock-free, as every server thread updates it) and a requests meter on the given registry.
+ */
+public class LookupServer implements AutoCloseable {
+    private static final String NOT_FOUND = "-";
+
+    private final HashLookup lookup;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Timer lookupLatency;
+    private final Meter requests;
+
+    /**
+     * @param threads how many requests are handled at once
+     */
+    public LookupServer(HashLookup lookup, InetSocketAddress address, int threads, MetricRegistry metrics)
+            throws IOException {
+        this.lookup = lookup;
+        lookupLatency = Metrics.hotPathTimer(metrics, "lookupLatency");
+        requests = metrics.meter("requests");
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "lookup-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(address, 0);
+        server.createContext("/lookup", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * The port the server is listening on; useful when it was created with port 0.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.mark();
+        try {
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> handleSingle(exchange);
+                case "POST" -> handleBatch(exchange);
+                default -> respond(exchange, 405, "GET or POST\n");
+            }
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "interrupted\n");
+        } catch (RuntimeException e) {
+            respond(exchange, 500, e + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleSingle(HttpExchange exchange) throws IOException, InterruptedException {
+        String hex = queryParameter(exchange.getRequestURI(), "hash");
+        if (hex == null) {
+            throw new IllegalArgumentException("missing hash parameter");
+        }
+        IpAddress ip = search(parseHash(hex));
+        if (ip == null) {
+            respond(exchange, 404, NOT_FOUND + "\n");
+        } else {
+            respond(exchange, 200, ip + "\n");
+        }
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException, InterruptedException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String hex = line.trim();
+                if (hex.isEmpty()) {
+                    continue;
+                }
+                IpAddress ip = search(parseHash(hex));
+                response.writeBytes((hex + " " + (ip == null ? NOT_FOUND : ip.toString()) + "\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        respond(exchange, 200, response.toByteArray());
+    }
+
+    private IpAddress search(byte[] hash) throws InterruptedException {
+        try (Timer.Context ignored = lookupLatency.time()) {
+            return lookup.search(hash);
+        }
+    }
+
+    private static byte[] parseHash(String hex) {
+        if (hex.length() != PackedRecords.HASH_SIZE * 2) {
+            throw new IllegalArgumentException("not a 40 digit hex hash: " + hex);
+        }
+        try {
+            return HexFormat.of().parseHex(hex);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("not a 40 digit hex hash: " + hex);
+        }
+    }
+
+    private static String queryParameter(URI uri, String name) {
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.startsWith(name + "=")) {
+                return pair.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        respond(exchange, status, body.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=us-ascii");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Stops accepting requests, lets the ones in flight finish (for up to a few seconds), then closes the lookup.
+     */
+    @Override
+    public void close() throws Exception {
+        server.stop(1);
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        lookup.close();
+    }
+}
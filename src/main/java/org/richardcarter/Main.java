@@ -3,79 +3,313 @@ package org.richardcarter;
 import com.codahale.metrics.*;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.PrintWriter;
 import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class Main {
     public static final String FILENAME = "ipsAndHashes.bin";
     public static final String CHUNKED_FILENAME_PATTERN = "hashLookup%d.bin";
+    public static final String BUCKET_FILENAME_PATTERN = "hashBucket%d.bin";
+    public static final int BUCKET_BITS = 10;
+    public static final String COMPACT_FILENAME_PATTERN = "hashCompact%d.bin";
+    public static final String MERGED_FILENAME_PATTERN = "hashMerged%d.bin";
+    public static final String MERGED_INDEX_FILENAME = "hashMerged.sidx";
+    // ~6 GB per segment file
+    public static final long MERGED_SEGMENT_RECORDS = 1L << 28;
+    public static final String PERFECT_HASH_BASENAME = "hashPerfect";
+    public static final String BLOOM_FILTER_FILENAME = "hashLookup.bloom";
+    public static final int LOOKUP_SERVER_PORT = 8420;
+    // ~40 bytes per cached lookup
+    public static final int LOOKUP_CACHE_ENTRIES = 1 << 20;
 
     public static void main(String[] args) throws Exception {
+        // Every method reports to the shared Metrics registry: on the console, as CSV files in metrics/ and over JMX.
+        //
         // Recommended procedure:
         // 1. writeChunkedFiles(args); -- writes the chunked files; one file per CPU logical processor, in parallel.
-        // 2. sortChunkedFiles(args); -- sorts each chunked file, one at a time (to not overwhelm RAM).
+        //    If it's interrupted, run it again: each file picks up from its last checkpoint (the .ckpt sidecar).
+        // 2. sortChunkedFiles(args); -- sorts the chunked files, as many at a time as fit in RAM.
         // 3. binarySearchChunkedFiles(args); -- binary search for a desired hash in the chunked files. (update the `desiredHash` variable)
+        // buildBloomFilter(args); -- after step 1, writes a ~5 GB filter that turns away hashes not in the table before any search.
+        // runLookupServer(args); -- after step 2, serves lookups over HTTP on localhost, with the table kept open.
+        // buildChunkedFiles(args); -- does steps 1 and 2 as one pipeline, sorting each chunk while the next ones generate.
+        // writeSortedChunkedFiles(args); -- does steps 1 and 2 in one go, writing each chunk once, already sorted.
+        // mergeChunkedFiles(args); -- after step 2, merges the sorted chunks into one sorted table with a sparse index.
+        // searchMergedFiles(args); -- looks up a desired hash in the merged table; one index probe and one read.
+        // buildPerfectHashIndex(args); -- after step 1, builds a ~24 GB minimal perfect hash index; no sort needed.
+        // searchPerfectHashIndex(args); -- looks up a desired hash in it; one function evaluation and one read.
+        //
+        // bulkSearchChunkedFiles(args); -- reverse a whole file of hex hashes at once with one sequential pass per chunk.
+        // indexChunkedFiles(args); -- writes the prefix index sidecars for chunked files sorted before sorting wrote them.
+        // bruteForceSolve(args); -- no table needed: hashes every IP until a file of hex hashes is all resolved.
+        //
+        // Alternative layout, partitioned by hash prefix instead of by IP range:
+        // writeBucketedFiles(args); -- writes & sorts 2^BUCKET_BITS bucket files that together are one sorted table.
+        // searchBucketedFiles(args); -- looks up a desired hash in the one bucket that can hold it.
+        //
+        // Compact format, IP + 4 byte hash fingerprint (~34 GB total); same three steps as the chunked files:
+        // writeCompactChunkedFiles(args); sortCompactChunkedFiles(args); searchCompactChunkedFiles(args);
 
         // Older attempts:
-        // parallel(args); -- generate one large lookup table file, but do the hashing in parallel. slower than series.
+        // parallel(args); -- generate one large lookup table file, hashing blocks of IPs on every core.
         // series(args); -- generate one large lookup table file, using just one thread. this seemed optimal; I/O is the bottleneck.
         // findIp(args); -- search the large lookup table file for a hash. linear search.
         // sortInPlace(args); -- sort the large lookup table file in-place using quicksort. extremely slow; it ran for 8 hours and didn't finish.
     }
 
+    /**
+     * The chunked files on disk, numbered from 0 up to the first one missing. There's one per core, or more if
+     * writeSortedChunkedFiles split the table finer to fit its memory budget, so readers count the files rather than
+     * the cores.
+     */
+    static List<String> chunkedFilenames() {
+        List<String> filenames = new ArrayList<>();
+        for (int i = 0; Files.exists(Path.of(String.format(CHUNKED_FILENAME_PATTERN, i))); i++) {
+            filenames.add(String.format(CHUNKED_FILENAME_PATTERN, i));
+        }
+        if (filenames.isEmpty()) {
+            throw new IllegalStateException("No chunked files; expected " + String.format(CHUNKED_FILENAME_PATTERN, 0));
+        }
+        return filenames;
+    }
+
+    /**
+     * Deletes the chunked files numbered {@code numChunks} and up, with their sidecars: what's left of an earlier run
+     * that split the table into more chunks, which chunkedFilenames would otherwise pick up.
+     */
+    static void deleteChunkedFilesFrom(int numChunks) throws Exception {
+        for (int i = numChunks; Files.exists(Path.of(String.format(CHUNKED_FILENAME_PATTERN, i))); i++) {
+            String filename = String.format(CHUNKED_FILENAME_PATTERN, i);
+            Files.deleteIfExists(Path.of(PrefixIndex.filenameFor(filename)));
+            GenerateChunkFile.deleteCheckpoint(filename);
+            Files.delete(Path.of(filename));
+        }
+    }
+
     /**
      * Binary search the lookup table files.
-     * Just single-threaded searches them in order.
+     * Searches all of them in parallel and stops at the first hit.
      */
     public static void binarySearchChunkedFiles(String[] args) throws Exception {
         byte[] desiredHash = new byte[] {
                 // 20 bytes of hash go here
         };
 
-        int numChunks = Runtime.getRuntime().availableProcessors();
-        for (int i = 0; i < numChunks; i++) {
-            String filename = String.format(CHUNKED_FILENAME_PATTERN, i);
-            System.out.println(filename);
-            IpAddress foundIp = new BinarySearcher(filename).search(desiredHash);
-            if (foundIp != null) {
-                System.out.println(foundIp);
-                break;
+        MetricRegistry metrics = Metrics.registry();
+        Timer lookupTimer = Metrics.hotPathTimer(metrics, "lookupTime");
+
+        HashLookup lookup = new ChunkedSearcher(chunkedFilenames(), lookupTimer);
+        if (Files.exists(Path.of(BLOOM_FILTER_FILENAME))) {
+            lookup = new PrefilteredLookup(BloomFilter.read(BLOOM_FILTER_FILENAME), lookup, metrics.meter("rejected"));
+        }
+        try (HashLookup searcher = lookup) {
+            IpAddress foundIp = searcher.search(desiredHash);
+            System.out.println(foundIp);
+        }
+
+        ConsoleReporter.forRegistry(metrics)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build()
+                .report();
+        System.out.println("done");
+    }
+
+    /**
+     * Serve lookups over HTTP until the JVM is stopped; see {@link LookupServer} for the requests.
+     * Listens on localhost, on port args[0] (default LOOKUP_SERVER_PORT). Searches the chunked files, behind the
+     * bloom filter if it's been built and a cache of recent lookups.
+     */
+    public static void runLookupServer(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : LOOKUP_SERVER_PORT;
+
+        MetricRegistry metrics = Metrics.registry();
+        // each request thread fans out over every chunk, so the searcher has threads for all of them at once
+        int serverThreads = Runtime.getRuntime().availableProcessors();
+        HashLookup lookup = new ChunkedSearcher(chunkedFilenames(), serverThreads,
+                Metrics.hotPathTimer(metrics, "chunkSearchTime"));
+        if (Files.exists(Path.of(BLOOM_FILTER_FILENAME))) {
+            lookup = new PrefilteredLookup(BloomFilter.read(BLOOM_FILTER_FILENAME), lookup, metrics.meter("rejected"));
+        }
+        lookup = new CachingLookup(lookup, LOOKUP_CACHE_ENTRIES, metrics);
+
+        AutoCloseable reporter = Metrics.startReporters(1, TimeUnit.MINUTES);
+
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        LookupServer server = new LookupServer(lookup, address, serverThreads, metrics);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                reporter.close();
+            } catch (Exception e) {
+                e.printStackTrace();
             }
+        }));
+        server.start();
+        System.out.println("Listening on http://" + address.getHostString() + ":" + server.getPort() + "/lookup");
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Reverse a batch of hashes by merge-joining them against each sorted lookup table file.
+     * Reads one hex hash per line from args[0] (default hashes.txt) and writes "hash ip" lines to args[1]
+     * (default hashes.out.txt). Hashes that aren't found are left out.
+     */
+    public static void bulkSearchChunkedFiles(String[] args) throws Exception {
+        String inputFilename = args.length > 0 ? args[0] : "hashes.txt";
+        String outputFilename = args.length > 1 ? args[1] : "hashes.out.txt";
+
+        MetricRegistry metrics = Metrics.registry();
+        Meter readMeter = metrics.meter("readBytes");
+        Meter matchMeter = metrics.meter("matches");
+
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        MergeJoinSearcher searcher = new MergeJoinSearcher(MergeJoinSearcher.readHexFile(inputFilename));
+        System.out.println("Searching for " + searcher.getCountTargets() + " hashes");
+
+        List<String> filenames = chunkedFilenames();
+
+        HexFormat hex = HexFormat.of();
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(outputFilename)))) {
+            searcher.searchAll(filenames, (hash, ip) -> {
+                String line = hex.formatHex(hash) + " " + ip;
+                synchronized (out) {
+                    out.println(line);
+                }
+                matchMeter.mark();
+            }, readMeter);
+        }
+
+        reporter.close();
+        System.out.println("done");
+    }
+
+    /**
+     * Reverse a batch of hashes without the lookup table, by hashing the whole IPv4 space on every core.
+     * Reads one hex hash per line from args[0] (default hashes.txt) and writes "hash ip" lines to args[1]
+     * (default hashes.out.txt) as they are found. Stops once they are all found.
+     */
+    public static void bruteForceSolve(String[] args) throws Exception {
+        String inputFilename = args.length > 0 ? args[0] : "hashes.txt";
+        String outputFilename = args.length > 1 ? args[1] : "hashes.out.txt";
+
+        MetricRegistry metrics = Metrics.registry();
+        Meter hashRate = metrics.meter("hashRate");
+        Meter matchMeter = metrics.meter("matches");
+
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        BruteForceSolver solver = new BruteForceSolver(MergeJoinSearcher.readHexFile(inputFilename));
+        System.out.println("Solving for " + solver.getCountTargets() + " hashes");
+
+        HexFormat hex = HexFormat.of();
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(outputFilename)))) {
+            int resolved = solver.solve(IpRange.ALL, (hash, ip) -> {
+                String line = hex.formatHex(hash) + " " + ip;
+                synchronized (out) {
+                    out.println(line);
+                    out.flush();
+                }
+                matchMeter.mark();
+            }, hashRate);
+            System.out.println("Resolved " + resolved + " of " + solver.getCountTargets());
+        }
+
+        reporter.close();
+        System.out.println("done");
+    }
+
+    /**
+     * Build the prefix index sidecar for each sorted lookup table file.
+     * Sorting writes these itself; this is for files that were sorted before it did.
+     */
+    public static void indexChunkedFiles(String[] args) throws Exception {
+        for (String filename : chunkedFilenames()) {
+            System.out.println(filename);
+            PrefixIndex.fromTableFile(filename, PrefixIndex.DEFAULT_BITS).write(PrefixIndex.filenameFor(filename));
         }
         System.out.println("done");
     }
 
     /**
      * Sort the lookup table files.
-     * Since each file is large, sorts them one at a time in a single thread.
-     * The file is loaded into memory, sorted, then overwritten back to disk.
+     * Since each file is large, only as many are sorted at once as fit in memory.
+     * Each file is loaded into a packed buffer in memory, radix sorted, then overwritten back to disk.
+     * Files bigger than the heap are sorted in pieces and merged.
      */
     public static void sortChunkedFiles(String[] args) throws Exception {
-        MetricRegistry metrics = new MetricRegistry();
+        MetricRegistry metrics = Metrics.registry();
 
         Meter readMeter = metrics.meter("readBytes");
         Timer sortTimer = metrics.timer("sortTime");
         Meter writeMeter = metrics.meter("writeBytes");
 
-        ConsoleReporter reporter = ConsoleReporter.forRegistry(metrics)
-                .convertRatesTo(TimeUnit.SECONDS)
-                .convertDurationsTo(TimeUnit.MILLISECONDS)
-                .build();
-        reporter.start(5, TimeUnit.SECONDS);
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
 
-        // You can't do all of these in parallel (unless you have > 100GB RAM) so we do them linearly.
-        // If you wanted to do this sort faster, you could do a few in parallel at a time.
+        // You can't do all of these in parallel (unless you have > 100GB RAM), so as many run at once as fit in the
+        // budget, and the rest wait. Chunks that don't fit in the budget at all are sorted in runs and merged on disk.
+        long memoryBudget = Runtime.getRuntime().maxMemory() / 4 * 3;
 
-        int numChunks = Runtime.getRuntime().availableProcessors();
+        List<String> filenames = chunkedFilenames();
+        // StorageSortInMemory does the same job with an IpAndHash object per entry; this uses ~1/4 of the memory.
+        try (SortScheduler scheduler = new SortScheduler(memoryBudget, 2, readMeter, sortTimer, writeMeter)) {
+            metrics.register("availableMemoryMB", (Gauge<Integer>) scheduler::getAvailableMegabytes);
+            scheduler.sortAll(filenames);
+        }
+
+        reporter.close();
+        System.out.println("done");
+    }
+
+    /**
+     * Write and sort the lookup table files, the same files as writeChunkedFiles and then sortChunkedFiles, with the
+     * two overlapped: each chunk is sorted as soon as it's written, while the next ones are being generated.
+     * A quarter of the cores sort and the rest hash; two chunks are read or written at once alongside generation.
+     */
+    public static void buildChunkedFiles(String[] args) throws Exception {
+        MetricRegistry metrics = Metrics.registry();
+
+        Meter hashRate = metrics.meter("hashRate");
+        Meter readMeter = metrics.meter("readBytes");
+        Timer sortTimer = metrics.timer("sortTime");
+        Meter writeMeter = metrics.meter("writeBytes");
+
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        int sortThreads = Math.max(1, cores / 4);
+        int hashThreads = Math.max(1, cores - sortThreads);
+        long memoryBudget = Runtime.getRuntime().maxMemory() / 4 * 3;
+
+        int numChunks = cores;
+        deleteChunkedFilesFrom(numChunks);
+        IpRange[] ranges = IpRange.ALL.split(numChunks);
+        List<String> filenames = new ArrayList<>();
         for (int i = 0; i < numChunks; i++) {
-            String filename = String.format(CHUNKED_FILENAME_PATTERN, i);
-            StorageSortInMemory sorter = new StorageSortInMemory(filename, readMeter, sortTimer, writeMeter);
-            sorter.sort();
+            filenames.add(String.format(CHUNKED_FILENAME_PATTERN, i));
+        }
+        try (BuildPipeline pipeline = new BuildPipeline(hashThreads, sortThreads, memoryBudget, 3,
+                hashRate, readMeter, sortTimer, writeMeter)) {
+            metrics.register("availableMemoryMB", (Gauge<Integer>) pipeline::getAvailableMegabytes);
+            pipeline.build(ranges, filenames);
         }
 
+        reporter.close();
         System.out.println("done");
     }
 
@@ -83,40 +317,297 @@ public class Main {
      * Write the lookup table as a set of files.
      * First it divides the IPv4 space into N regions, where N = number of logical processors.
      * And then, in parallel, generates & saves those regions to numbered output files.
+     * Rerunning after a crash resumes each file from its last checkpoint, and skips the files already complete.
      */
     public static void writeChunkedFiles(String[] args) throws Exception {
-        MetricRegistry metrics = new MetricRegistry();
+        MetricRegistry metrics = Metrics.registry();
 
         int numChunks = Runtime.getRuntime().availableProcessors();
+        deleteChunkedFilesFrom(numChunks);
         ExecutorService executorService = Executors.newFixedThreadPool(numChunks);
 
-        long max = (new IpAddress(255, 255, 255, 255).toLong() & 0xFFFFFFFFL) + 1L;
-        long increment = max / numChunks;
-        IpAddress[] ips = new IpAddress[numChunks + 1];
-        ips[numChunks] = new IpAddress(255, 255, 255, 255);
+        IpRange[] ranges = IpRange.ALL.split(numChunks);
+        List<Future<?>> generators = new ArrayList<>();
+        for (int i = 0; i < numChunks; i++) {
+            Meter meter = metrics.meter("generator-" + i);
+            GenerateChunkFile generator = new GenerateChunkFile(ranges[i],
+                    String.format(CHUNKED_FILENAME_PATTERN, i), meter);
+            generators.add(executorService.submit(generator));
+        }
+
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        executorService.shutdown();
+        // however long it takes; a failed chunk is thrown here
+        for (Future<?> generator : generators) {
+            generator.get();
+        }
+
+        reporter.close();
+        System.out.println("done");
+    }
+
+    /**
+     * Merge the sorted lookup table files into one sorted table, in segment files, plus a sparse index over it.
+     * The chunk files are left in place; delete them once the merged table checks out.
+     */
+    public static void mergeChunkedFiles(String[] args) throws Exception {
+        MetricRegistry metrics = Metrics.registry();
+        Meter writeMeter = metrics.meter("writeBytes");
+
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        List<String> filenames = chunkedFilenames();
+        new ChunkMerger(filenames, MERGED_FILENAME_PATTERN, MERGED_INDEX_FILENAME, MERGED_SEGMENT_RECORDS,
+                SparseIndex.DEFAULT_STRIDE, writeMeter).merge();
+
+        reporter.close();
+        System.out.println("done");
+    }
+
+    /**
+     * Look up a hash in the merged lookup table.
+     */
+    public static void searchMergedFiles(String[] args) throws Exception {
+        byte[] desiredHash = new byte[] {
+                // 20 bytes of hash go here
+        };
+
+        try (MergedSearcher searcher = new MergedSearcher(MERGED_FILENAME_PATTERN, MERGED_INDEX_FILENAME)) {
+            System.out.println(searcher.search(desiredHash));
+        }
+        System.out.println("done");
+    }
+
+    /**
+     * Build a minimal perfect hash index over the lookup table files; they don't need to be sorted.
+     */
+    public static void buildPerfectHashIndex(String[] args) throws Exception {
+        MetricRegistry metrics = Metrics.registry();
+        Meter readMeter = metrics.meter("readBytes");
+
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        List<String> filenames = chunkedFilenames();
+        PerfectHashIndex.build(filenames, PERFECT_HASH_BASENAME, MinimalPerfectHash.DEFAULT_GAMMA, readMeter);
+
+        reporter.close();
+        System.out.println("done");
+    }
 
+    /**
+     * Build a bloom filter over the lookup table files; they don't need to be sorted.
+     * binarySearchChunkedFiles checks it first when it exists.
+     */
+    public static void buildBloomFilter(String[] args) throws Exception {
+        MetricRegistry metrics = Metrics.registry();
+        Meter readMeter = metrics.meter("readBytes");
+
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        List<String> filenames = chunkedFilenames();
+        BloomFilter.fromTableFiles(filenames, BloomFilter.DEFAULT_BITS_PER_KEY, readMeter).write(BLOOM_FILTER_FILENAME);
+
+        reporter.close();
+        System.out.println("done");
+    }
+
+    /**
+     * Look up a hash in the minimal perfect hash index.
+     */
+    public static void searchPerfectHashIndex(String[] args) throws Exception {
+        byte[] desiredHash = new byte[] {
+                // 20 bytes of hash go here
+        };
+
+        try (PerfectHashIndex index = new PerfectHashIndex(PERFECT_HASH_BASENAME)) {
+            System.out.println(index.search(desiredHash));
+        }
+        System.out.println("done");
+    }
+
+    /**
+     * Write the lookup table files already sorted, divided up like writeChunkedFiles, or more finely if a chunk per
+     * core wouldn't fit in the memory budget. Each chunk is hashed into memory, sorted there and written once, instead
+     * of being written, read back and rewritten. As many chunks run at once as fit in the memory budget; each one
+     * hashes and sorts on every core.
+     */
+    public static void writeSortedChunkedFiles(String[] args) throws Exception {
+        MetricRegistry metrics = Metrics.registry();
+
+        Meter hashRate = metrics.meter("hashRate");
+        Timer sortTimer = metrics.timer("sortTime");
+        Meter writeMeter = metrics.meter("writeBytes");
+
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        MemoryBudget budget = new MemoryBudget(Runtime.getRuntime().maxMemory() / 4 * 3);
+        metrics.register("availableMemoryMB", (Gauge<Integer>) budget::getAvailableMegabytes);
+
+        // at least one chunk per core, and small enough that every chunk fits in the budget on its own
+        int cores = Runtime.getRuntime().availableProcessors();
+        int numChunks = GenerateSortedChunk.chunksFor((long) budget.getTotalMegabytes() << 20, cores);
+        deleteChunkedFilesFrom(numChunks);
+        IpRange[] ranges = IpRange.ALL.split(numChunks);
+        ExecutorService executorService = Executors.newFixedThreadPool(cores);
+        List<Future<?>> chunks = new ArrayList<>();
         for (int i = 0; i < numChunks; i++) {
-            ips[i] = IpAddress.fromLong(increment * i);
+            IpRange range = ranges[i];
+            String filename = String.format(CHUNKED_FILENAME_PATTERN, i);
+            chunks.add(executorService.submit(() -> {
+                try (MemoryBudget.Lease ignored = budget.acquire(GenerateSortedChunk.memoryNeeded(range))) {
+                    new GenerateSortedChunk(range, filename, hashRate, sortTimer, writeMeter).run();
+                }
+                return null;
+            }));
+        }
+        executorService.shutdown();
+        for (Future<?> chunk : chunks) {
+            chunk.get();
+        }
+
+        reporter.close();
+        System.out.println("done");
+    }
+
+    /**
+     * Write the lookup table as hash-prefix buckets.
+     * Workers each take a region of the IPv4 space, like writeChunkedFiles, but append every entry to the bucket file
+     * for its hash prefix. Then each (small) bucket is sorted in memory, several at a time.
+     */
+    public static void writeBucketedFiles(String[] args) throws Exception {
+        MetricRegistry metrics = Metrics.registry();
+        Meter readMeter = metrics.meter("readBytes");
+        Timer sortTimer = metrics.timer("sortTime");
+        Meter writeMeter = metrics.meter("writeBytes");
+
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        IpRange[] ranges = IpRange.ALL.split(numThreads);
+        try (BucketWriter writer = new BucketWriter(BUCKET_FILENAME_PATTERN, BUCKET_BITS)) {
+            ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+            List<Future<?>> generators = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                generators.add(executorService.submit(
+                        new GenerateBucketFiles(ranges[i], writer, metrics.meter("generator-" + i))));
+            }
+            executorService.shutdown();
+            // a failed generator is thrown here, before any bucket is sorted
+            for (Future<?> generator : generators) {
+                generator.get();
+            }
+        }
+
+        // buckets are small enough to binary search whole, so they get no prefix index
+        ExecutorService sortService = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> sorts = new ArrayList<>();
+        for (int i = 0; i < 1 << BUCKET_BITS; i++) {
+            String filename = String.format(BUCKET_FILENAME_PATTERN, i);
+            sorts.add(sortService.submit(
+                    () -> new StorageSortRadix(filename, readMeter, sortTimer, writeMeter, false).sort()));
+        }
+        sortService.shutdown();
+        for (Future<?> sort : sorts) {
+            sort.get();
+        }
+
+        reporter.close();
+        System.out.println("done");
+    }
+
+    /**
+     * Look up a hash in the bucketed lookup table.
+     */
+    public static void searchBucketedFiles(String[] args) throws Exception {
+        byte[] desiredHash = new byte[] {
+                // 20 bytes of hash go here
+        };
+
+        try (BucketSearcher searcher = new BucketSearcher(BUCKET_FILENAME_PATTERN, BUCKET_BITS)) {
+            System.out.println(searcher.search(desiredHash));
         }
+        System.out.println("done");
+    }
+
+    /**
+     * Write the compact lookup table as a set of files, divided up like writeChunkedFiles.
+     */
+    public static void writeCompactChunkedFiles(String[] args) throws Exception {
+        MetricRegistry metrics = Metrics.registry();
 
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        int numChunks = Runtime.getRuntime().availableProcessors();
+        ExecutorService executorService = Executors.newFixedThreadPool(numChunks);
+        IpRange[] ranges = IpRange.ALL.split(numChunks);
+        List<Future<?>> generators = new ArrayList<>();
         for (int i = 0; i < numChunks; i++) {
-            IpAddress start = ips[i];
-            IpAddress end = ips[i + 1];
+            IpRange range = ranges[i];
+            String filename = String.format(COMPACT_FILENAME_PATTERN, i);
             Meter meter = metrics.meter("generator-" + i);
-            GenerateChunkFile generator = new GenerateChunkFile(start, end,
-                    String.format(CHUNKED_FILENAME_PATTERN, i), meter);
-            executorService.submit(generator);
+            generators.add(executorService.submit(() -> {
+                byte[] hash = new byte[PackedRecords.HASH_SIZE];
+                try (CompactStorageWriter writer = new CompactStorageWriter(filename)) {
+                    range.forEach(ip -> {
+                        Hasher.calculateHash(ip, hash, 0);
+                        writer.write(ip, hash, 0);
+                        meter.mark();
+                    });
+                }
+                return null;
+            }));
         }
 
-        ConsoleReporter reporter = ConsoleReporter.forRegistry(metrics)
-                .convertRatesTo(TimeUnit.SECONDS)
-                .convertDurationsTo(TimeUnit.MILLISECONDS)
-                .build();
-        reporter.start(5, TimeUnit.SECONDS);
-
         executorService.shutdown();
-        executorService.awaitTermination(20, TimeUnit.MINUTES);
+        // however long it takes; a failed chunk is thrown here
+        for (Future<?> generator : generators) {
+            generator.get();
+        }
+        reporter.close();
+        System.out.println("done");
+    }
+
+    /**
+     * Sort the compact lookup table files, one at a time.
+     */
+    public static void sortCompactChunkedFiles(String[] args) throws Exception {
+        MetricRegistry metrics = Metrics.registry();
 
+        Meter readMeter = metrics.meter("readBytes");
+        Timer sortTimer = metrics.timer("sortTime");
+        Meter writeMeter = metrics.meter("writeBytes");
+
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        int numChunks = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < numChunks; i++) {
+            String filename = String.format(COMPACT_FILENAME_PATTERN, i);
+            new CompactStorageSort(filename, readMeter, sortTimer, writeMeter).sort();
+        }
+
+        reporter.close();
+        System.out.println("done");
+    }
+
+    /**
+     * Look up a hash in the compact lookup table files.
+     */
+    public static void searchCompactChunkedFiles(String[] args) throws Exception {
+        byte[] desiredHash = new byte[] {
+                // 20 bytes of hash go here
+        };
+
+        int numChunks = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < numChunks; i++) {
+            try (CompactSearcher searcher = new CompactSearcher(String.format(COMPACT_FILENAME_PATTERN, i))) {
+                IpAddress foundIp = searcher.search(desiredHash);
+                if (foundIp != null) {
+                    System.out.println(foundIp);
+                    break;
+                }
+            }
+        }
         System.out.println("done");
     }
 
@@ -136,7 +627,7 @@ public class Main {
      */
     @Deprecated
     public static void findIp(String[] args) throws Exception {
-        MetricRegistry metrics = new MetricRegistry();
+        MetricRegistry metrics = Metrics.registry();
 
         AtomicReference<byte[]> lastIp = new AtomicReference<>();
         Gauge<String> currentIpGauge = metrics.gauge("currentIp", () -> new Gauge<String>() {
@@ -150,11 +641,7 @@ public class Main {
             }
         });
 
-        ConsoleReporter reporter = ConsoleReporter.forRegistry(metrics)
-                .convertRatesTo(TimeUnit.SECONDS)
-                .convertDurationsTo(TimeUnit.MILLISECONDS)
-                .build();
-        reporter.start(5, TimeUnit.SECONDS);
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
 
         byte[] desiredHash = new byte[] {
             // 20 bytes of hash goes here
@@ -185,82 +672,43 @@ public class Main {
      */
     @Deprecated
     public static void series(String[] args) throws Exception {
-        MetricRegistry metrics = new MetricRegistry();
+        MetricRegistry metrics = Metrics.registry();
 
         Meter hashRate = metrics.meter("hashRate");
 
-        ConsoleReporter reporter = ConsoleReporter.forRegistry(metrics)
-                .convertRatesTo(TimeUnit.SECONDS)
-                .convertDurationsTo(TimeUnit.MILLISECONDS)
-                .build();
-        reporter.start(5, TimeUnit.SECONDS);
-
-        IpAddress ip = IpAddress.MIN_VALUE;
-        SettableGauge<IpAddress> currentIp = new DefaultSettableGauge<>(ip);
-        metrics.register("currentIp", currentIp);
-        try (StorageWriter writer = new StorageWriter("ipsAndHashes.bin")) {
-            while (!ip.equals(IpAddress.MAX_VALUE)) {
-                currentIp.setValue(ip);
-                byte[] hash = Hasher.calculateHash(ip);
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
+
+        AtomicInteger currentIp = new AtomicInteger();
+        metrics.register("currentIp", (Gauge<IpAddress>) () -> IpAddress.fromInt(currentIp.get()));
+        byte[] hash = new byte[PackedRecords.HASH_SIZE];
+        try (StorageWriter writer = new StorageWriter("ipsAndHashes.bin", IpRange.ALL.size() * PackedRecords.RECORD_SIZE)) {
+            IpRange.ALL.forEach(ip -> {
+                currentIp.lazySet(ip);
+                Hasher.calculateHash(ip, hash, 0);
                 hashRate.mark();
-                writer.write(ip, hash);
-                ip = ip.increment();
-            }
+                writer.write(ip, hash, 0);
+            });
         }
     }
 
     /**
      * Generate the single large lookup table using workers in parallel.
-     * It seems the CPU processing of SHA-1 is not the bottleneck, so this ended up being slower than doing it
-     * in a single thread, likely due to the contention of the workers depositing the results into the shared results
-     * queue.
-     * It might be able to be improved, maybe workers could add in batches for example.
+     * The first version submitted a task per IP and funnelled single results through a shared blocking queue, and was
+     * slower than series. Now each worker hashes whole blocks of IPs into its own lock-free ring of record buffers,
+     * and this thread writes the blocks out in IP order (see HashPipeline).
      */
-    @Deprecated
     public static void parallel(String[] args) throws Exception {
-        MetricRegistry metrics = new MetricRegistry();
+        MetricRegistry metrics = Metrics.registry();
 
         Meter hashRate = metrics.meter("hashRate");
 
-        BlockingQueue<IpAndHash> hashResults = new ArrayBlockingQueue<>(4000000, false);
-        metrics.register("resultsQueueDepth", (Gauge<Integer>) hashResults::size);
-
-        StorageWriter writer = new StorageWriter("ipsAndHashes.bin");
-        Histogram batchSize = metrics.histogram("writerBatchSize");
-        StorageWriterConsumer writerConsumer = new StorageWriterConsumer(hashResults, writer, batchSize);
-        Thread writerConsumerThread = new Thread(writerConsumer);
+        AutoCloseable reporter = Metrics.startReporters(5, TimeUnit.SECONDS);
 
         int nThreads = Runtime.getRuntime().availableProcessors();
-        ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
-
-        ConsoleReporter reporter = ConsoleReporter.forRegistry(metrics)
-                .convertRatesTo(TimeUnit.SECONDS)
-                .convertDurationsTo(TimeUnit.MILLISECONDS)
-                .build();
-        reporter.start(5, TimeUnit.SECONDS);
-
-        writerConsumerThread.start();
-
-        Semaphore semaphore = new Semaphore(200);
-
-        IpAddress ip = IpAddress.MIN_VALUE;
-        SettableGauge<IpAddress> currentIp = new DefaultSettableGauge<>(ip);
-        metrics.register("currentIp", currentIp);
-        IpAddress max = IpAddress.MAX_VALUE;
-        while (!ip.equals(max)) {
-            semaphore.acquire();
-            executorService.submit(new GenerateHashTask(ip, hashResults, hashRate, semaphore));
-            ip = ip.increment();
-            currentIp.setValue(ip);
+        try (StorageWriter writer = new StorageWriter(FILENAME, IpRange.ALL.size() * PackedRecords.RECORD_SIZE)) {
+            new HashPipeline(IpRange.ALL, nThreads, hashRate).run(writer);
         }
 
-        executorService.shutdown();
-
-        Thread.sleep(1);
-
-        writerConsumer.shutdown();
-        writerConsumerThread.join();
-
-        reporter.stop();
+        reporter.close();
     }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package org.richardcarter;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only file mapped into memory as a series of {@link MappedByteBuffer} windows, since a single mapping is
+ * limited to 2 GB. Windows overlap by {@link #MAX_READ} bytes so that any read of up to that size lands in a single
+ * window.
+ * <p>
+ * Only absolute gets are used, so one instance can be shared between threads.
+ */
+public class MappedFile implements AutoCloseable {
+    public static final int MAX_READ = 64;
+
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+    private static final long WINDOW_MASK = WINDOW_SIZE - 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] windows;
+    @Getter
+    private final long length;
+
+    @SneakyThrows
+    public MappedFile(String filename) {
+        channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ);
+        length = channel.size();
+
+        int windowCount = (int) ((length + WINDOW_SIZE - 1) >>> WINDOW_SHIFT);
+        windows = new MappedByteBuffer[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            long start = (long) i << WINDOW_SHIFT;
+            long size = Math.min(WINDOW_SIZE + MAX_READ, length - start);
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        }
+    }
+
+    private MappedByteBuffer window(long position) {
+        return windows[(int) (position >>> WINDOW_SHIFT)];
+    }
+
+    public byte get(long position) {
+        return window(position).get((int) (position & WINDOW_MASK));
+    }
+
+    public int getInt(long position) {
+        return window(position).getInt((int) (position & WINDOW_MASK));
+    }
+
+    public long getLong(long position) {
+        return window(position).getLong((int) (position & WINDOW_MASK));
+    }
+
+    /**
+     * Copies {@code length} bytes (at most {@link #MAX_READ}) starting at {@code position} into {@code dst}.
+     */
+    public void get(long position, byte[] dst, int offset, int length) {
+        window(position).get((int) (position & WINDOW_MASK), dst, offset, length);
+    }
+
+    /**
+     * Closes the channel. The mappings stay valid until they're garbage collected.
+     */
+    @Override
+    public void close() throws Exception {
+        channel.close();
+    }
+}
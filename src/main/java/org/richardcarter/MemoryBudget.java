@@ -0,0 +1,51 @@
+package org.richardcarter;
+
+import lombok.Getter;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds how much heap concurrent jobs (such as in-memory chunk sorts) may hold at once. Jobs lease the memory they
+ * need before allocating it, and wait while the budget is used up. Counted in whole megabytes.
+ */
+public class MemoryBudget {
+    private static final long MB = 1 << 20;
+
+    private final Semaphore permits;
+    @Getter
+    private final int totalMegabytes;
+
+    public MemoryBudget(long bytes) {
+        totalMegabytes = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / MB));
+        // fair, so a big lease isn't starved by a stream of small ones
+        permits = new Semaphore(totalMegabytes, true);
+    }
+
+    /**
+     * Waits until {@code bytes} are available and takes them. A lease bigger than the whole budget takes the whole
+     * budget, so it still runs, just on its own.
+     */
+    public Lease acquire(long bytes) throws InterruptedException {
+        int megabytes = (int) Math.min(totalMegabytes, Math.max(1, (bytes + MB - 1) / MB));
+        permits.acquire(megabytes);
+        return new Lease(megabytes);
+    }
+
+    public int getAvailableMegabytes() {
+        return permits.availablePermits();
+    }
+
+    public class Lease implements AutoCloseable {
+        private int megabytes;
+
+        private Lease(int megabytes) {
+            this.megabytes = megabytes;
+        }
+
+        @Override
+        public void close() {
+            permits.release(megabytes);
+            megabytes = 0;
+        }
+    }
+}
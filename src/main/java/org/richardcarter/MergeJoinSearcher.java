@@ -0,0 +1,113 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import static org.richardcarter.PackedRecords.HASH_SIZE;
+import static org.richardcarter.PackedRecords.IP_SIZE;
+import static org.richardcarter.PackedRecords.RECORD_SIZE;
+
+/**
+ * Reverses a large batch of hashes at once.
+ * The target hashes are sorted in memory, then each sorted chunk file is read front to back and merge-joined against
+ * them. That's one sequential pass per chunk no matter how many targets there are, instead of a handful of random reads
+ * per target; it wins over {@link BinarySearcher} once a batch reaches the thousands.
+ */
+public class MergeJoinSearcher {
+    private static final int BUFFER_RECORDS = 1 << 18;
+
+    private final PackedRecords targets;
+    @Getter
+    private final int countTargets;
+
+    public MergeJoinSearcher(List<byte[]> targetHashes) {
+        countTargets = targetHashes.size();
+        targets = new PackedRecords(countTargets);
+        for (int i = 0; i < countTargets; i++) {
+            byte[] hash = targetHashes.get(i);
+            if (hash.length != HASH_SIZE) {
+                throw new IllegalArgumentException("Expected a 20 byte hash but got " + hash.length);
+            }
+            targets.set(i, 0, hash, 0);
+        }
+        targets.sort();
+    }
+
+    /**
+     * Reads a text file with one hex-encoded hash per line; blank lines are skipped.
+     */
+    @SneakyThrows
+    public static List<byte[]> readHexFile(String filename) {
+        HexFormat hex = HexFormat.of();
+        try (var lines = Files.lines(Path.of(filename))) {
+            return lines.map(String::trim)
+                    .filter(line -> !line.isEmpty())
+                    .map(hex::parseHex)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Merge-joins one sorted chunk file against the targets.
+     *
+     * @param onMatch called with each matched hash and its IP; the hash array is reused between calls
+     */
+    @SneakyThrows
+    public void search(String filename, BiConsumer<byte[], IpAddress> onMatch, Meter readMeter) {
+        byte[] hash = new byte[HASH_SIZE];
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * BUFFER_RECORDS);
+        int t = 0;
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            while (t < countTargets) {
+                int read = channel.read(buffer);
+                if (read > 0) {
+                    readMeter.mark(read);
+                }
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE && t < countTargets) {
+                    int position = buffer.position();
+                    long hash0 = PackedRecords.toSortKey(buffer.getLong(position + IP_SIZE));
+                    long hash1 = PackedRecords.toSortKey(buffer.getLong(position + IP_SIZE + 8));
+                    int hash2 = PackedRecords.toSortKey(buffer.getInt(position + IP_SIZE + 16));
+
+                    while (t < countTargets && targets.compareHash(t, hash0, hash1, hash2) < 0) {
+                        t++;
+                    }
+                    // Duplicate targets all match the same entry.
+                    for (int j = t; j < countTargets && targets.compareHash(j, hash0, hash1, hash2) == 0; j++) {
+                        targets.hash(j, hash, 0);
+                        onMatch.accept(hash, IpAddress.fromLong(buffer.getInt(position) & 0xFFFFFFFFL));
+                    }
+                    buffer.position(position + RECORD_SIZE);
+                }
+                buffer.compact();
+                if (read < 0) {
+                    if (buffer.position() != 0) {
+                        throw new IllegalArgumentException(filename + " length is not a multiple of 24");
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge-joins every chunk file against the targets, one chunk per thread.
+     *
+     * @param onMatch called from several threads at once
+     */
+    public void searchAll(List<String> filenames, BiConsumer<byte[], IpAddress> onMatch, Meter readMeter) {
+        filenames.parallelStream().forEach(filename -> search(filename, onMatch, readMeter));
+    }
+}
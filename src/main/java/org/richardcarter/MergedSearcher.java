@@ -0,0 +1,101 @@
+package org.richardcarter;
+
+import lombok.SneakyThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.richardcarter.PackedRecords.HASH_SIZE;
+import static org.richardcarter.PackedRecords.IP_SIZE;
+import static org.richardcarter.PackedRecords.RECORD_SIZE;
+
+/**
+ * Looks up hashes in a table merged by {@link ChunkMerger}. The {@link SparseIndex} is held in memory and narrows a
+ * hash down to a block or two of entries, which are read with one positional read and binary searched in memory.
+ * Thread-safe.
+ */
+public class MergedSearcher implements HashLookup {
+    private final SparseIndex index;
+    private final FileChannel[] segments;
+
+    @SneakyThrows
+    public MergedSearcher(String segmentFilenamePattern, String indexFilename) {
+        index = SparseIndex.read(indexFilename);
+        segments = new FileChannel[index.getCountSegments()];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = FileChannel.open(Path.of(String.format(segmentFilenamePattern, i)), StandardOpenOption.READ);
+        }
+    }
+
+    public long getCountEntries() {
+        return index.getCountEntries();
+    }
+
+    /**
+     * @return the IP with the hash, or null if it isn't in the table
+     */
+    @Override
+    public IpAddress search(byte[] hash) {
+        long sortKey = PackedRecords.sortKeyOf(hash, 0);
+        long start = index.start(sortKey);
+        long end = index.end(sortKey);
+        if (start >= end) {
+            return null;
+        }
+        ByteBuffer block = read(start, (int) (end - start));
+
+        int low = 0;
+        int high = (int) (end - start);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int offset = middle * RECORD_SIZE + IP_SIZE;
+            if (Arrays.compare(block.array(), offset, offset + HASH_SIZE, hash, 0, HASH_SIZE) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int offset = low * RECORD_SIZE;
+        if (low < end - start
+                && Arrays.equals(block.array(), offset + IP_SIZE, offset + RECORD_SIZE, hash, 0, HASH_SIZE)) {
+            return IpAddress.fromLong(block.getInt(offset) & 0xFFFFFFFFL);
+        }
+        return null;
+    }
+
+    /**
+     * Reads {@code count} entries from entry {@code start} on; they may span segment files.
+     */
+    @SneakyThrows
+    private ByteBuffer read(long start, int count) {
+        ByteBuffer block = ByteBuffer.allocate(count * RECORD_SIZE);
+        long entry = start;
+        while (block.hasRemaining()) {
+            int segment = (int) (entry / index.getSegmentRecords());
+            long inSegment = entry % index.getSegmentRecords();
+            int entries = (int) Math.min(block.remaining() / RECORD_SIZE, index.getSegmentRecords() - inSegment);
+            block.limit(block.position() + entries * RECORD_SIZE);
+            long position = inSegment * RECORD_SIZE;
+            while (block.hasRemaining()) {
+                int read = segments[segment].read(block, position);
+                if (read < 0) {
+                    throw new IllegalStateException("Segment " + segment + " is shorter than its index says");
+                }
+                position += read;
+            }
+            block.limit(block.capacity());
+            entry += entries;
+        }
+        return block;
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (FileChannel segment : segments) {
+            segment.close();
+        }
+    }
+}
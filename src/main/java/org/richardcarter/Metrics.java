@@ -0,0 +1,106 @@
+package org.richardcarter;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.CsvReporter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.LockFreeExponentiallyDecayingReservoir;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.jmx.JmxReporter;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one metric registry that generation, writing, sorting and lookups all report to, and the reporters that export
+ * it. Components keep their metrics in static fields named after their class, e.g.
+ * {@code org.richardcarter.StorageWriter.flushStalls}, so the stages can be compared side by side:
+ * <ul>
+ *     <li>GenerateChunkFile: hashes (the hash rate), hashTime and writeTime per batch (CPU versus I/O)</li>
+ *     <li>StorageWriter: bytesFlushed, flushTime (the disk writes) and flushStalls (waits for the disk)</li>
+ *     <li>StorageSortInMemory: readTime, sortTime and writeTime per chunk</li>
+ *     <li>BinarySearcher: searchTime and probes (records compared per lookup)</li>
+ * </ul>
+ * The Main methods report to it too, so their own meters show up alongside.
+ */
+public final class Metrics {
+    public static final String REGISTRY_NAME = "hashedIpSolver";
+    public static final String CSV_DIRECTORY = "metrics";
+
+    private Metrics() {
+    }
+
+    public static MetricRegistry registry() {
+        return SharedMetricRegistries.getOrCreate(REGISTRY_NAME);
+    }
+
+    public static Meter meter(Class<?> owner, String name) {
+        return registry().meter(MetricRegistry.name(owner, name));
+    }
+
+    public static Timer timer(Class<?> owner, String name) {
+        return registry().timer(MetricRegistry.name(owner, name));
+    }
+
+    public static Histogram histogram(Class<?> owner, String name) {
+        return registry().histogram(MetricRegistry.name(owner, name));
+    }
+
+    /**
+     * For timers updated on every lookup. The default reservoir takes a lock shared by every thread and allocates a
+     * sample on each update; this one is lock-free and only allocates for the rare update it keeps.
+     */
+    public static Timer hotPathTimer(Class<?> owner, String name) {
+        return hotPathTimer(registry(), MetricRegistry.name(owner, name));
+    }
+
+    /**
+     * A {@link #hotPathTimer} on a given registry, under a plain name.
+     */
+    public static Timer hotPathTimer(MetricRegistry registry, String name) {
+        return registry.timer(name, () -> new Timer(LockFreeExponentiallyDecayingReservoir.builder().build()));
+    }
+
+    /**
+     * A histogram for every-lookup updates, like {@link #hotPathTimer}.
+     */
+    public static Histogram hotPathHistogram(Class<?> owner, String name) {
+        return registry().histogram(MetricRegistry.name(owner, name),
+                () -> new Histogram(LockFreeExponentiallyDecayingReservoir.builder().build()));
+    }
+
+    /**
+     * Starts exporting the registry: to the console and to one CSV file per metric in {@link #CSV_DIRECTORY}, every
+     * period, and to JMX (under the registry's name) continuously. Closing the result stops them all.
+     */
+    public static AutoCloseable startReporters(long period, TimeUnit unit) {
+        MetricRegistry registry = registry();
+        ConsoleReporter console = ConsoleReporter.forRegistry(registry)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+        File csvDirectory = new File(CSV_DIRECTORY);
+        csvDirectory.mkdirs();
+        CsvReporter csv = CsvReporter.forRegistry(registry)
+                .formatFor(Locale.US)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build(csvDirectory);
+        JmxReporter jmx = JmxReporter.forRegistry(registry)
+                .inDomain(REGISTRY_NAME)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+        console.start(period, unit);
+        csv.start(period, unit);
+        jmx.start();
+        return () -> {
+            jmx.stop();
+            csv.stop();
+            console.stop();
+        };
+    }
+}
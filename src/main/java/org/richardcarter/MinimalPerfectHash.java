@@ -0,0 +1,320 @@
+package org.richardcarter;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal perfect hash function over a fixed set of 128-bit keys (here, the first 16 bytes of each SHA-1 digest in the
+ * table): maps every key in the set to a distinct number in {@code [0, countKeys)}, in about 3.7 bits per key.
+ * <p>
+ * Built the BBHash way, as a stack of bit arrays. Each remaining key hashes to a position in the current level's
+ * array; positions hit by exactly one key keep their bit set and place that key, and the keys that collided move on
+ * to the next, smaller level. A key's number is the count of set bits before its bit, across all levels. Keys still
+ * unplaced after {@link #MAX_LEVELS} (practically none) are kept in a small sorted fallback list.
+ * <p>
+ * The keys are streamed from a {@link KeySource} once per level, so the set doesn't have to fit in memory; once few
+ * enough keys remain, they are collected and the last levels are built in memory.
+ * <p>
+ * File format: the number of keys as a long, the number of levels as an int, then for each level its size in bits
+ * followed by its words as longs; then the fallback count as an int followed by its key pairs.
+ */
+public class MinimalPerfectHash {
+    public static final double DEFAULT_GAMMA = 2.0;
+    private static final int MAX_LEVELS = 32;
+    // Words per rank sample (512 bits); each sample is a long, so ranks cost 1/8 bit per bit.
+    private static final int RANK_WORDS = 8;
+    // Collect the remaining keys into memory once they take no more than this.
+    private static final long IN_MEMORY_BYTES = 1L << 30;
+
+    public interface KeyConsumer {
+        void accept(long key0, long key1);
+    }
+
+    /**
+     * The keys to build over. forEach must hand out the same keys every time it is called.
+     */
+    public interface KeySource {
+        void forEach(KeyConsumer consumer);
+    }
+
+    @Getter
+    private final long countKeys;
+    private final long[][] levels;
+    private final long[] levelSizes;
+    private final long[][] ranks;
+    private final long[] levelOffsets;
+    // sorted by (key0, key1), unsigned
+    private final long[] fallback0;
+    private final long[] fallback1;
+
+    private MinimalPerfectHash(long countKeys, List<long[]> levels, List<Long> levelSizes,
+                               long[] fallback0, long[] fallback1) {
+        this.countKeys = countKeys;
+        this.levels = levels.toArray(new long[0][]);
+        this.levelSizes = levelSizes.stream().mapToLong(Long::longValue).toArray();
+        this.ranks = new long[this.levels.length][];
+        this.levelOffsets = new long[this.levels.length + 1];
+        for (int level = 0; level < this.levels.length; level++) {
+            long[] words = this.levels[level];
+            long[] levelRanks = new long[(words.length + RANK_WORDS - 1) / RANK_WORDS];
+            long count = 0;
+            for (int w = 0; w < words.length; w++) {
+                if (w % RANK_WORDS == 0) {
+                    levelRanks[w / RANK_WORDS] = count;
+                }
+                count += Long.bitCount(words[w]);
+            }
+            ranks[level] = levelRanks;
+            levelOffsets[level + 1] = levelOffsets[level] + count;
+        }
+        this.fallback0 = fallback0;
+        this.fallback1 = fallback1;
+        if (levelOffsets[this.levels.length] + fallback0.length != countKeys) {
+            throw new IllegalStateException("Placed " + (levelOffsets[this.levels.length] + fallback0.length)
+                    + " keys but expected " + countKeys);
+        }
+    }
+
+    /**
+     * @return the key's number, or -1 for some (not all) keys outside the set
+     */
+    public long index(long key0, long key1) {
+        for (int level = 0; level < levels.length; level++) {
+            long position = position(key0, key1, level, levelSizes[level]);
+            long[] words = levels[level];
+            int w = (int) (position >>> 6);
+            long bit = 1L << position;
+            if ((words[w] & bit) != 0) {
+                long rank = levelOffsets[level] + ranks[level][w / RANK_WORDS];
+                for (int i = w - w % RANK_WORDS; i < w; i++) {
+                    rank += Long.bitCount(words[i]);
+                }
+                return rank + Long.bitCount(words[w] & (bit - 1));
+            }
+        }
+        int i = fallbackIndexOf(fallback0, fallback1, key0, key1);
+        return i >= 0 ? levelOffsets[levels.length] + i : -1;
+    }
+
+    private static long position(long key0, long key1, int level, long size) {
+        long h = key0 ^ Long.rotateLeft(key1, 29) ^ (0x9E3779B97F4A7C15L * (level + 1));
+        // murmur3 fmix64
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return Long.remainderUnsigned(h, size);
+    }
+
+    private static int fallbackIndexOf(long[] keys0, long[] keys1, long key0, long key1) {
+        int low = 0;
+        int high = keys0.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int c = Long.compareUnsigned(keys0[middle], key0);
+            if (c == 0) {
+                c = Long.compareUnsigned(keys1[middle], key1);
+            }
+            if (c < 0) {
+                low = middle + 1;
+            } else if (c > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean placedBefore(List<long[]> levels, List<Long> levelSizes, long key0, long key1, int level) {
+        for (int j = 0; j < level; j++) {
+            long position = position(key0, key1, j, levelSizes.get(j));
+            if ((levels.get(j)[(int) (position >>> 6)] & (1L << position)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param countKeys how many distinct keys the source holds
+     * @param gamma     level size per remaining key; higher builds faster and looks up faster but takes more bits
+     */
+    public static MinimalPerfectHash build(KeySource keys, long countKeys, double gamma) {
+        return build(keys, countKeys, gamma, IN_MEMORY_BYTES);
+    }
+
+    /**
+     * @param inMemoryBytes collect the remaining keys into memory once they take no more than this
+     */
+    static MinimalPerfectHash build(KeySource keys, long countKeys, double gamma, long inMemoryBytes) {
+        List<long[]> levels = new ArrayList<>();
+        List<Long> levelSizes = new ArrayList<>();
+        long remaining = countKeys;
+        // the keys not placed yet, once there are few enough to hold
+        long[] memory0 = null;
+        long[] memory1 = null;
+
+        while (remaining > 0 && levels.size() < MAX_LEVELS) {
+            int level = levels.size();
+            if (memory0 == null && remaining * 2 * Long.BYTES <= inMemoryBytes) {
+                long[][] collected = collect(keys, levels, levelSizes, (int) remaining);
+                memory0 = collected[0];
+                memory1 = collected[1];
+            }
+
+            long size = Math.max(64, (long) Math.ceil(remaining * gamma) + 63 & ~63L);
+            long[] seen = new long[(int) (size >>> 6)];
+            long[] collided = new long[seen.length];
+            KeyConsumer mark = (key0, key1) -> {
+                long position = position(key0, key1, level, size);
+                int w = (int) (position >>> 6);
+                long bit = 1L << position;
+                if ((seen[w] & bit) != 0) {
+                    collided[w] |= bit;
+                } else {
+                    seen[w] |= bit;
+                }
+            };
+            if (memory0 != null) {
+                for (int i = 0; i < memory0.length; i++) {
+                    mark.accept(memory0[i], memory1[i]);
+                }
+            } else {
+                keys.forEach((key0, key1) -> {
+                    if (!placedBefore(levels, levelSizes, key0, key1, level)) {
+                        mark.accept(key0, key1);
+                    }
+                });
+            }
+
+            long placed = 0;
+            for (int w = 0; w < seen.length; w++) {
+                seen[w] &= ~collided[w];
+                placed += Long.bitCount(seen[w]);
+            }
+            levels.add(seen);
+            levelSizes.add(size);
+            remaining -= placed;
+
+            if (memory0 != null) {
+                int kept = 0;
+                for (int i = 0; i < memory0.length; i++) {
+                    long position = position(memory0[i], memory1[i], level, size);
+                    if ((seen[(int) (position >>> 6)] & (1L << position)) == 0) {
+                        memory0[kept] = memory0[i];
+                        memory1[kept] = memory1[i];
+                        kept++;
+                    }
+                }
+                memory0 = Arrays.copyOf(memory0, kept);
+                memory1 = Arrays.copyOf(memory1, kept);
+            }
+        }
+
+        long[][] fallback = remaining == 0 ? new long[][] {new long[0], new long[0]}
+                : memory0 != null ? new long[][] {memory0, memory1}
+                : collect(keys, levels, levelSizes, (int) remaining);
+        sortPairs(fallback[0], fallback[1]);
+        return new MinimalPerfectHash(countKeys, levels, levelSizes, fallback[0], fallback[1]);
+    }
+
+    private static long[][] collect(KeySource keys, List<long[]> levels, List<Long> levelSizes, int remaining) {
+        long[] keys0 = new long[remaining];
+        long[] keys1 = new long[remaining];
+        int[] count = new int[1];
+        keys.forEach((key0, key1) -> {
+            if (!placedBefore(levels, levelSizes, key0, key1, levels.size())) {
+                if (count[0] == remaining) {
+                    throw new IllegalArgumentException("The key source holds more keys than countKeys");
+                }
+                keys0[count[0]] = key0;
+                keys1[count[0]] = key1;
+                count[0]++;
+            }
+        });
+        if (count[0] != remaining) {
+            throw new IllegalArgumentException("The key source holds fewer keys than countKeys");
+        }
+        return new long[][] {keys0, keys1};
+    }
+
+    private static void sortPairs(long[] keys0, long[] keys1) {
+        Integer[] order = new Integer[keys0.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compareUnsigned(keys0[a], keys0[b]);
+            return c != 0 ? c : Long.compareUnsigned(keys1[a], keys1[b]);
+        });
+        long[] sorted0 = new long[order.length];
+        long[] sorted1 = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted0[i] = keys0[order[i]];
+            sorted1[i] = keys1[order[i]];
+        }
+        System.arraycopy(sorted0, 0, keys0, 0, order.length);
+        System.arraycopy(sorted1, 0, keys1, 0, order.length);
+    }
+
+    @SneakyThrows
+    public void write(String filename) {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename), 1 << 20))) {
+            out.writeLong(countKeys);
+            out.writeInt(levels.length);
+            for (int level = 0; level < levels.length; level++) {
+                out.writeLong(levelSizes[level]);
+                for (long word : levels[level]) {
+                    out.writeLong(word);
+                }
+            }
+            out.writeInt(fallback0.length);
+            for (int i = 0; i < fallback0.length; i++) {
+                out.writeLong(fallback0[i]);
+                out.writeLong(fallback1[i]);
+            }
+        }
+    }
+
+    @SneakyThrows
+    public static MinimalPerfectHash read(String filename) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename), 1 << 20))) {
+            long countKeys = in.readLong();
+            int countLevels = in.readInt();
+            if (countKeys < 0 || countLevels < 0 || countLevels > MAX_LEVELS) {
+                throw new IllegalArgumentException("Not a minimal perfect hash: " + filename);
+            }
+            List<long[]> levels = new ArrayList<>();
+            List<Long> levelSizes = new ArrayList<>();
+            for (int level = 0; level < countLevels; level++) {
+                long size = in.readLong();
+                long[] words = new long[(int) (size >>> 6)];
+                for (int w = 0; w < words.length; w++) {
+                    words[w] = in.readLong();
+                }
+                levels.add(words);
+                levelSizes.add(size);
+            }
+            int countFallback = in.readInt();
+            long[] fallback0 = new long[countFallback];
+            long[] fallback1 = new long[countFallback];
+            for (int i = 0; i < countFallback; i++) {
+                fallback0[i] = in.readLong();
+                fallback1[i] = in.readLong();
+            }
+            return new MinimalPerfectHash(countKeys, levels, levelSizes, fallback0, fallback1);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A table of (ip, hash) records packed into three parallel long arrays; 24 bytes per record, no per-record objects.
+ * <p>
+ * Hash bytes are stored with their sign bit flipped, so comparing the words as unsigned longs gives the same order as
+ * {@code Arrays.compare} on the original (signed) hash bytes. That's the order the chunk files have always been sorted
+ * in, so files sorted by this class are interchangeable with ones sorted by {@link StorageSortInMemory}.
+ */
+public class PackedRecords {
+    public static final int IP_SIZE = 4;
+    public static final int HASH_SIZE = 20;
+    public static final int RECORD_SIZE = IP_SIZE + HASH_SIZE;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final long FLIP_LONG = 0x8080808080808080L;
+    private static final int FLIP_INT = 0x80808080;
+
+    // Below this many records a bucket is sorted by the current thread instead of forking more tasks.
+    private static final int FORK_THRESHOLD = 1 << 16;
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+    private static final int KEY_BYTES = RECORD_SIZE;
+
+    private static final int IO_BUFFER_RECORDS = 1 << 18;
+
+    // hash bytes 0..7
+    private final long[] hi;
+    // hash bytes 8..15
+    private final long[] mid;
+    // hash bytes 16..19 in the upper half, ip in the lower half
+    private final long[] lo;
+    @Getter
+    private final int size;
+
+    public PackedRecords(int size) {
+        this.hi = new long[size];
+        this.mid = new long[size];
+        this.lo = new long[size];
+        this.size = size;
+    }
+
+    /**
+     * Sets record i from a 24-byte on-disk record (4 bytes IP, 20 bytes hash) held in a buffer.
+     */
+    public void set(int i, ByteBuffer buffer, int offset) {
+        int ip = buffer.getInt(offset);
+        hi[i] = buffer.getLong(offset + 4) ^ FLIP_LONG;
+        mid[i] = buffer.getLong(offset + 12) ^ FLIP_LONG;
+        lo[i] = ((long) (buffer.getInt(offset + 20) ^ FLIP_INT) << 32) | (ip & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes record i into a buffer in the 24-byte on-disk format.
+     */
+    public void get(int i, ByteBuffer buffer, int offset) {
+        buffer.putInt(offset, (int) lo[i]);
+        buffer.putLong(offset + 4, hi[i] ^ FLIP_LONG);
+        buffer.putLong(offset + 12, mid[i] ^ FLIP_LONG);
+        buffer.putInt(offset + 20, (int) (lo[i] >>> 32) ^ FLIP_INT);
+    }
+
+    public void set(int i, int ip, byte[] hash, int hashOffset) {
+        hi[i] = (long) LONG_VIEW.get(hash, hashOffset) ^ FLIP_LONG;
+        mid[i] = (long) LONG_VIEW.get(hash, hashOffset + 8) ^ FLIP_LONG;
+        lo[i] = ((long) ((int) INT_VIEW.get(hash, hashOffset + 16) ^ FLIP_INT) << 32) | (ip & 0xFFFFFFFFL);
+    }
+
+    public int ip(int i) {
+        return (int) lo[i];
+    }
+
+    /**
+     * Copies the hash of record i into {@code out} at {@code offset}.
+     */
+    public void hash(int i, byte[] out, int offset) {
+        LONG_VIEW.set(out, offset, hi[i] ^ FLIP_LONG);
+        LONG_VIEW.set(out, offset + 8, mid[i] ^ FLIP_LONG);
+        INT_VIEW.set(out, offset + 16, (int) (lo[i] >>> 32) ^ FLIP_INT);
+    }
+
+    /**
+     * The first 8 hash bytes of record i as an unsigned number that sorts in table order.
+     */
+    public long sortKey(int i) {
+        return hi[i];
+    }
+
+    /**
+     * The 8 hash bytes starting at {@code offset} as an unsigned number that sorts in table order.
+     */
+    public static long sortKeyOf(byte[] hash, int offset) {
+        return (long) LONG_VIEW.get(hash, offset) ^ FLIP_LONG;
+    }
+
+    /**
+     * The 4 hash bytes starting at {@code offset} as an unsigned number that sorts in table order.
+     */
+    public static int sortKeyOfInt(byte[] hash, int offset) {
+        return (int) INT_VIEW.get(hash, offset) ^ FLIP_INT;
+    }
+
+    /**
+     * Converts 8 big-endian hash bytes read from a table file into an unsigned number that sorts in table order.
+     */
+    public static long toSortKey(long hashBytes) {
+        return hashBytes ^ FLIP_LONG;
+    }
+
+    /**
+     * Converts 4 big-endian hash bytes read from a table file into an unsigned number that sorts in table order.
+     */
+    public static int toSortKey(int hashBytes) {
+        return hashBytes ^ FLIP_INT;
+    }
+
+    public int compare(int i, int j) {
+        int c = Long.compareUnsigned(hi[i], hi[j]);
+        if (c != 0) {
+            return c;
+        }
+        c = Long.compareUnsigned(mid[i], mid[j]);
+        if (c != 0) {
+            return c;
+        }
+        return Long.compareUnsigned(lo[i], lo[j]);
+    }
+
+    /**
+     * Compares the hash of record i (ignoring its IP) to a hash given as sort keys.
+     */
+    public int compareHash(int i, long hash0, long hash1, int hash2) {
+        int c = Long.compareUnsigned(hi[i], hash0);
+        if (c != 0) {
+            return c;
+        }
+        c = Long.compareUnsigned(mid[i], hash1);
+        if (c != 0) {
+            return c;
+        }
+        return Integer.compareUnsigned((int) (lo[i] >>> 32), hash2);
+    }
+
+    /**
+     * Sorts by hash (then IP) with a parallel in-place MSD radix sort.
+     * SHA-1 output is uniform, so the 256 buckets at every level come out nearly the same size and split evenly
+     * across the fork-join pool.
+     */
+    public void sort() {
+        sort(0, size);
+    }
+
+    /**
+     * Sorts on {@code pool} instead of the common pool, so the sort uses at most that pool's cores.
+     */
+    public void sort(ForkJoinPool pool) {
+        pool.invoke(new SortTask(0, size, 0));
+    }
+
+    /**
+     * Sorts records [from, to) only.
+     */
+    public void sort(int from, int to) {
+        ForkJoinPool.commonPool().invoke(new SortTask(from, to, 0));
+    }
+
+    private int digit(int i, int depth) {
+        long word;
+        if (depth < 8) {
+            word = hi[i];
+        } else if (depth < 16) {
+            word = mid[i];
+        } else {
+            word = lo[i];
+        }
+        return (int) (word >>> (56 - 8 * (depth & 7))) & 0xFF;
+    }
+
+    private void swap(int i, int j) {
+        long t = hi[i];
+        hi[i] = hi[j];
+        hi[j] = t;
+        t = mid[i];
+        mid[i] = mid[j];
+        mid[j] = t;
+        t = lo[i];
+        lo[i] = lo[j];
+        lo[j] = t;
+    }
+
+    /**
+     * American flag sort pass: permutes [from, to) in place so it's grouped by the byte at {@code depth}.
+     *
+     * @return the bucket boundaries; bucket b is [bounds[b], bounds[b + 1])
+     */
+    private int[] partition(int from, int to, int depth) {
+        int[] bounds = new int[257];
+        for (int i = from; i < to; i++) {
+            bounds[digit(i, depth) + 1]++;
+        }
+        bounds[0] = from;
+        for (int b = 0; b < 256; b++) {
+            bounds[b + 1] += bounds[b];
+        }
+
+        int[] next = new int[256];
+        System.arraycopy(bounds, 0, next, 0, 256);
+        for (int b = 0; b < 256; b++) {
+            int end = bounds[b + 1];
+            while (next[b] < end) {
+                int d = digit(next[b], depth);
+                while (d != b) {
+                    swap(next[b], next[d]++);
+                    d = digit(next[b], depth);
+                }
+                next[b]++;
+            }
+        }
+        return bounds;
+    }
+
+    private void sortSequential(int from, int to, int depth) {
+        if (to - from < INSERTION_SORT_THRESHOLD) {
+            insertionSort(from, to);
+            return;
+        }
+        if (depth >= KEY_BYTES) {
+            return;
+        }
+        int[] bounds = partition(from, to, depth);
+        for (int b = 0; b < 256; b++) {
+            if (bounds[b + 1] - bounds[b] > 1) {
+                sortSequential(bounds[b], bounds[b + 1], depth + 1);
+            }
+        }
+    }
+
+    private void insertionSort(int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && compare(j - 1, j) > 0; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private class SortTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int depth;
+
+        SortTask(int from, int to, int depth) {
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < FORK_THRESHOLD || depth >= KEY_BYTES) {
+                sortSequential(from, to, depth);
+                return;
+            }
+            int[] bounds = partition(from, to, depth);
+            SortTask[] tasks = new SortTask[256];
+            int n = 0;
+            for (int b = 0; b < 256; b++) {
+                if (bounds[b + 1] - bounds[b] > 1) {
+                    tasks[n++] = new SortTask(bounds[b], bounds[b + 1], depth + 1);
+                }
+            }
+            invokeAll(Arrays.asList(tasks).subList(0, n));
+        }
+    }
+
+    /**
+     * Loads a whole table file. The file must hold fewer than 2^31 records.
+     */
+    @SneakyThrows
+    public static PackedRecords read(String filename, Meter readMeter) {
+        long size = Files.size(Path.of(filename));
+        if ((size % RECORD_SIZE) != 0) {
+            throw new IllegalArgumentException("File not divisible by 24: " + filename);
+        }
+        long entryCount = size / RECORD_SIZE;
+        if (entryCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Unexpected entryCount: " + entryCount);
+        }
+        PackedRecords records = new PackedRecords((int) entryCount);
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            records.read(channel, 0, records.size, readMeter);
+        }
+        return records;
+    }
+
+    /**
+     * Fills records [from, to) from the channel's current position.
+     */
+    @SneakyThrows
+    public void read(FileChannel channel, int from, int to, Meter readMeter) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * Math.min(IO_BUFFER_RECORDS, Math.max(1, to - from)));
+        int i = from;
+        while (i < to) {
+            buffer.clear();
+            buffer.limit(batchRecords(i, to) * RECORD_SIZE);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IllegalStateException(String.format(
+                            "Expected %d entries but only read %d", to - from, i - from + buffer.position() / RECORD_SIZE));
+                }
+            }
+            int count = buffer.position() / RECORD_SIZE;
+            for (int r = 0; r < count; r++) {
+                set(i + r, buffer, r * RECORD_SIZE);
+            }
+            i += count;
+            readMeter.mark(buffer.position());
+        }
+    }
+
+    /**
+     * How many of records [i, to) go through the I/O buffer next. In records, not bytes: the bytes left of a chunk
+     * overflow an int past 2^31 / 24 records.
+     */
+    static int batchRecords(int i, int to) {
+        return Math.min(IO_BUFFER_RECORDS, to - i);
+    }
+
+    @SneakyThrows
+    public void write(String filename, Meter writeMeter) {
+        try (FileChannel channel = FileChannel.open(Path.of(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(channel, 0, size, writeMeter);
+        }
+    }
+
+    /**
+     * Writes records [from, to) at the channel's current position.
+     */
+    @SneakyThrows
+    public void write(FileChannel channel, int from, int to, Meter writeMeter) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * Math.min(IO_BUFFER_RECORDS, Math.max(1, to - from)));
+        int i = from;
+        while (i < to) {
+            int count = batchRecords(i, to);
+            buffer.clear();
+            for (int r = 0; r < count; r++) {
+                get(i + r, buffer, r * RECORD_SIZE);
+            }
+            buffer.limit(count * RECORD_SIZE);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            i += count;
+            writeMeter.mark((long) count * RECORD_SIZE);
+        }
+    }
+}
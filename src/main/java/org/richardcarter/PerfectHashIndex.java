@@ -0,0 +1,135 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.richardcarter.PackedRecords.HASH_SIZE;
+import static org.richardcarter.PackedRecords.RECORD_SIZE;
+
+/**
+ * Constant-time hash lookups with no sorted table: a {@link MinimalPerfectHash} over the table's hashes gives each
+ * one a slot number, and the slot file holds, at that slot, the 4 byte IP and a 1 byte fingerprint of the hash (its
+ * last byte, which the function doesn't use). A lookup is one function evaluation in memory and one read of the mapped
+ * slot file; the fingerprint rejects 255 of 256 hashes that aren't in the table, and the rest are ruled out by
+ * recomputing the hash of the slot's IP, like {@link CompactSearcher} does.
+ * <p>
+ * For the full table that's about 2 GB for the function and 21.5 GB of slots, instead of 100 GB of sorted files.
+ * Built from table files, sorted or not. Thread-safe once built.
+ */
+public class PerfectHashIndex implements HashLookup {
+    public static final int SLOT_SIZE = PackedRecords.IP_SIZE + 1;
+    // slots per mapped window while building; 1.25 GB
+    private static final long WINDOW_SLOTS = 1L << 28;
+    private static final int READ_BUFFER_BYTES = 16 << 20;
+
+    private final MinimalPerfectHash function;
+    private final MappedFile slots;
+    @Getter
+    private final long countEntries;
+
+    public PerfectHashIndex(String basename) {
+        function = MinimalPerfectHash.read(functionFilenameFor(basename));
+        slots = new MappedFile(slotsFilenameFor(basename));
+        countEntries = function.getCountKeys();
+        if (slots.getLength() != countEntries * SLOT_SIZE) {
+            throw new IllegalArgumentException(slotsFilenameFor(basename) + " doesn't match its function");
+        }
+    }
+
+    public static String functionFilenameFor(String basename) {
+        return basename + ".mphf";
+    }
+
+    public static String slotsFilenameFor(String basename) {
+        return basename + ".slots";
+    }
+
+    /**
+     * @return the IP with the hash, or null if it isn't in the table
+     */
+    @Override
+    public IpAddress search(byte[] hash) {
+        long slot = function.index(PackedRecords.sortKeyOf(hash, 0), PackedRecords.sortKeyOf(hash, 8));
+        if (slot < 0 || slots.get(slot * SLOT_SIZE + PackedRecords.IP_SIZE) != hash[HASH_SIZE - 1]) {
+            return null;
+        }
+        int ip = slots.getInt(slot * SLOT_SIZE);
+        byte[] candidate = new byte[HASH_SIZE];
+        Hasher.calculateHash(ip, candidate, 0);
+        return Arrays.equals(candidate, hash) ? IpAddress.fromLong(ip & 0xFFFFFFFFL) : null;
+    }
+
+    /**
+     * Builds the function and the slot file for the entries of all the table files. Reads every file a few times
+     * over while building the function (see {@link MinimalPerfectHash}), then once more to fill in the slots.
+     */
+    @SneakyThrows
+    public static void build(List<String> tableFilenames, String basename, double gamma, Meter readMeter) {
+        long countEntries = 0;
+        for (String filename : tableFilenames) {
+            long size = Files.size(Path.of(filename));
+            if (size % RECORD_SIZE != 0) {
+                throw new IllegalArgumentException("File not divisible by 24: " + filename);
+            }
+            countEntries += size / RECORD_SIZE;
+        }
+
+        MinimalPerfectHash function = MinimalPerfectHash.build(consumer -> {
+            forEachRecord(tableFilenames, readMeter, reader -> consumer.accept(reader.hash0(), reader.hash1()));
+        }, countEntries, gamma);
+        function.write(functionFilenameFor(basename));
+
+        try (FileChannel channel = FileChannel.open(Path.of(slotsFilenameFor(basename)), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long length = countEntries * SLOT_SIZE;
+            MappedByteBuffer[] windows = new MappedByteBuffer[(int) ((countEntries + WINDOW_SLOTS - 1) / WINDOW_SLOTS)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = i * WINDOW_SLOTS * SLOT_SIZE;
+                windows[i] = channel.map(FileChannel.MapMode.READ_WRITE, start,
+                        Math.min(WINDOW_SLOTS * SLOT_SIZE, length - start));
+            }
+
+            forEachRecord(tableFilenames, readMeter, reader -> {
+                long slot = function.index(reader.hash0(), reader.hash1());
+                MappedByteBuffer window = windows[(int) (slot / WINDOW_SLOTS)];
+                int position = (int) (slot % WINDOW_SLOTS) * SLOT_SIZE;
+                window.putInt(position, reader.ip());
+                // hash2 holds hash bytes 16..19 as a sort key; flipping it back gives the bytes, the last one lowest
+                window.put(position + PackedRecords.IP_SIZE, (byte) PackedRecords.toSortKey(reader.hash2()));
+            });
+            for (MappedByteBuffer window : windows) {
+                window.force();
+            }
+        }
+    }
+
+    private interface RecordVisitor {
+        void visit(RecordReader reader);
+    }
+
+    @SneakyThrows
+    private static void forEachRecord(List<String> tableFilenames, Meter readMeter, RecordVisitor visitor) {
+        for (String filename : tableFilenames) {
+            try (RecordReader reader = new RecordReader(filename, READ_BUFFER_BYTES)) {
+                while (reader.next()) {
+                    visitor.visit(reader);
+                }
+            }
+            readMeter.mark(Files.size(Path.of(filename)));
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        slots.close();
+    }
+}
@@ -0,0 +1,29 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Checks a {@link BloomFilter} before handing a hash to the real lookup, so hashes that aren't in the table are
+ * (almost always) answered without any disk reads.
+ */
+@RequiredArgsConstructor
+public class PrefilteredLookup implements HashLookup {
+    private final BloomFilter filter;
+    private final HashLookup delegate;
+    private final Meter rejectMeter;
+
+    @Override
+    public IpAddress search(byte[] hash) throws InterruptedException {
+        if (!filter.mightContain(hash)) {
+            rejectMeter.mark();
+            return null;
+        }
+        return delegate.search(hash);
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+}
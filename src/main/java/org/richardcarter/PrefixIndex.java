@@ -0,0 +1,157 @@
+package org.richardcarter;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fan-out table for a sorted lookup table file: for every value of the first {@code bits} bits of the hash (in table
+ * order), the index of the first entry with that prefix. SHA-1 is uniform, so each prefix covers about
+ * {@code entries / 2^bits} entries and a search only has to look inside that small window.
+ * <p>
+ * It's saved next to the table as a sidecar file ({@link #filenameFor}). File format: the number of bits as an int,
+ * then {@code 2^bits + 1} longs.
+ */
+public class PrefixIndex {
+    public static final int DEFAULT_BITS = 20;
+    public static final int MIN_BITS = 1;
+    public static final int MAX_BITS = 24;
+
+    @Getter
+    private final int bits;
+    private final long[] offsets;
+
+    private PrefixIndex(int bits, long[] offsets) {
+        this.bits = bits;
+        this.offsets = offsets;
+    }
+
+    public static String filenameFor(String tableFilename) {
+        return tableFilename + ".idx";
+    }
+
+    /**
+     * @param sortKey the first 8 hash bytes as a sort key, see {@link PackedRecords#sortKeyOf}
+     */
+    public static int prefix(long sortKey, int bits) {
+        return (int) (sortKey >>> (64 - bits));
+    }
+
+    public int prefix(long sortKey) {
+        return prefix(sortKey, bits);
+    }
+
+    /**
+     * Index of the first entry with the prefix.
+     */
+    public long start(int prefix) {
+        return offsets[prefix];
+    }
+
+    /**
+     * Index after the last entry with the prefix.
+     */
+    public long end(int prefix) {
+        return offsets[prefix + 1];
+    }
+
+    public long getCountEntries() {
+        return offsets[offsets.length - 1];
+    }
+
+    /**
+     * Counts entries per prefix. Entries can be added in any order, so an index can be built while a table is being
+     * generated or merged, not just from a sorted one.
+     */
+    public static class Builder {
+        private final int bits;
+        private final long[] counts;
+
+        public Builder(int bits) {
+            if (bits < MIN_BITS || bits > MAX_BITS) {
+                throw new IllegalArgumentException("bits must be between " + MIN_BITS + " and " + MAX_BITS + ": " + bits);
+            }
+            this.bits = bits;
+            this.counts = new long[(1 << bits) + 1];
+        }
+
+        public void add(long sortKey) {
+            counts[prefix(sortKey, bits) + 1]++;
+        }
+
+        public PrefixIndex build() {
+            long[] offsets = counts.clone();
+            for (int i = 1; i < offsets.length; i++) {
+                offsets[i] += offsets[i - 1];
+            }
+            return new PrefixIndex(bits, offsets);
+        }
+    }
+
+    public static PrefixIndex fromRecords(PackedRecords records, int bits) {
+        Builder builder = new Builder(bits);
+        for (int i = 0; i < records.getSize(); i++) {
+            builder.add(records.sortKey(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds an index for a table that was sorted before indexes existed.
+     */
+    @SneakyThrows
+    public static PrefixIndex fromTableFile(String filename, int bits) {
+        Builder builder = new Builder(bits);
+        int bufferRecords = 1 << 18;
+        ByteBuffer buffer = ByteBuffer.allocate(PackedRecords.RECORD_SIZE * bufferRecords);
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            while (true) {
+                int read = channel.read(buffer);
+                buffer.flip();
+                while (buffer.remaining() >= PackedRecords.RECORD_SIZE) {
+                    int position = buffer.position();
+                    builder.add(PackedRecords.toSortKey(buffer.getLong(position + PackedRecords.IP_SIZE)));
+                    buffer.position(position + PackedRecords.RECORD_SIZE);
+                }
+                buffer.compact();
+                if (read < 0) {
+                    if (buffer.position() != 0) {
+                        throw new IllegalArgumentException(filename + " length is not a multiple of 24");
+                    }
+                    break;
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    @SneakyThrows
+    public void write(String filename) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(bits);
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+        }
+    }
+
+    @SneakyThrows
+    public static PrefixIndex read(String filename) {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Path.of(filename)));
+        int bits = buffer.getInt();
+        if (bits < MIN_BITS || bits > MAX_BITS || buffer.remaining() != ((1L << bits) + 1) * Long.BYTES) {
+            throw new IllegalArgumentException("Not a prefix index: " + filename);
+        }
+        long[] offsets = new long[(1 << bits) + 1];
+        buffer.asLongBuffer().get(offsets);
+        return new PrefixIndex(bits, offsets);
+    }
+}
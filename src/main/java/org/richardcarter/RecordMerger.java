@@ -0,0 +1,42 @@
+package org.richardcarter;
+
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of sorted table files: repeatedly hands back whichever reader holds the smallest remaining record.
+ */
+public class RecordMerger implements AutoCloseable {
+    private final List<RecordReader> readers;
+    private final PriorityQueue<RecordReader> queue;
+    private RecordReader current;
+
+    public RecordMerger(List<RecordReader> readers) {
+        this.readers = readers;
+        queue = new PriorityQueue<>(Math.max(1, readers.size()), RecordReader::compare);
+        for (RecordReader reader : readers) {
+            if (reader.next()) {
+                queue.add(reader);
+            }
+        }
+    }
+
+    /**
+     * @return the reader positioned at the next record in sorted order, or null when every reader is exhausted.
+     * The reader is only positioned there until the next call.
+     */
+    public RecordReader next() {
+        if (current != null && current.next()) {
+            queue.add(current);
+        }
+        current = queue.poll();
+        return current;
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (RecordReader reader : readers) {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.richardcarter;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.richardcarter.PackedRecords.IP_SIZE;
+import static org.richardcarter.PackedRecords.RECORD_SIZE;
+
+/**
+ * Reads a table file front to back, one record at a time, through a large buffer.
+ * The current record's hash is exposed as sort keys, so readers over sorted files can be merged without copying.
+ */
+public class RecordReader implements AutoCloseable {
+    @Getter
+    private final String filename;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private int position = -RECORD_SIZE;
+
+    @SneakyThrows
+    public RecordReader(String filename, int bufferBytes) {
+        this.filename = filename;
+        channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ);
+        buffer = ByteBuffer.allocate(Math.max(1, bufferBytes / RECORD_SIZE) * RECORD_SIZE);
+        buffer.flip();
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return false once there are no more records
+     */
+    @SneakyThrows
+    public boolean next() {
+        position += RECORD_SIZE;
+        if (position + RECORD_SIZE > buffer.limit()) {
+            buffer.position(Math.min(position, buffer.limit()));
+            buffer.compact();
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // fill the whole buffer so the next refill is a long way off
+            }
+            buffer.flip();
+            position = 0;
+            if (buffer.remaining() < RECORD_SIZE) {
+                if (buffer.hasRemaining()) {
+                    throw new IllegalArgumentException(filename + " length is not a multiple of 24");
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int ip() {
+        return buffer.getInt(position);
+    }
+
+    /**
+     * Hash bytes 0..7 as a sort key.
+     */
+    public long hash0() {
+        return PackedRecords.toSortKey(buffer.getLong(position + IP_SIZE));
+    }
+
+    /**
+     * Hash bytes 8..15 as a sort key.
+     */
+    public long hash1() {
+        return PackedRecords.toSortKey(buffer.getLong(position + IP_SIZE + 8));
+    }
+
+    /**
+     * Hash bytes 16..19 as a sort key.
+     */
+    public int hash2() {
+        return PackedRecords.toSortKey(buffer.getInt(position + IP_SIZE + 16));
+    }
+
+    /**
+     * Orders readers by their current records, the same way {@link PackedRecords#compare} orders records.
+     */
+    public static int compare(RecordReader a, RecordReader b) {
+        int c = Long.compareUnsigned(a.hash0(), b.hash0());
+        if (c != 0) {
+            return c;
+        }
+        c = Long.compareUnsigned(a.hash1(), b.hash1());
+        if (c != 0) {
+            return c;
+        }
+        c = Integer.compareUnsigned(a.hash2(), b.hash2());
+        if (c != 0) {
+            return c;
+        }
+        return Integer.compareUnsigned(a.ip(), b.ip());
+    }
+
+    /**
+     * Appends the current record, as stored on disk, to {@code out}.
+     */
+    public void copyTo(ByteBuffer out) {
+        out.put(buffer.array(), buffer.arrayOffset() + position, RECORD_SIZE);
+    }
+
+    @Override
+    public void close() throws Exception {
+        channel.close();
+    }
+}
@@ -0,0 +1,196 @@
+package org.richardcarter;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Multi-buffer SHA-1: hashes {@link #LANES} consecutive IPs (each in dotted-quad form followed by the salt) side by side,
+ * one per vector lane, with the incubating Java Vector API. That's 8 lanes on AVX2 and 16 on AVX-512. Produces the
+ * same digests as {@link Sha1IpHasher}.
+ * <p>
+ * Consecutive IPs have nearly identical messages, so the lanes mostly need the same number of blocks; lanes that
+ * finish early are masked off for the remaining blocks.
+ * <p>
+ * Needs {@code --add-modules jdk.incubator.vector}; {@link Hasher#hashRange} only loads it when the module is present.
+ * Not thread-safe; use one per thread (see {@link Hasher}).
+ */
+public class Sha1Lanes {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    public static final int LANES = SPECIES.length();
+
+    private static final int MAX_IP_LENGTH = Sha1IpHasher.MAX_IP_LENGTH;
+
+    // Per dotted-quad length: every word of the padded message, with zeros where the digits go.
+    private final int[][] templates = new int[MAX_IP_LENGTH + 1][];
+    // Per dotted-quad length: the first 16 bytes of the padded message, the part the digits are written into.
+    private final byte[][] templateHeads = new byte[MAX_IP_LENGTH + 1][];
+    private final int maxBlocks;
+
+    private final byte[] head = new byte[16];
+    private final int[] laneBlocks = new int[LANES];
+    // Message words for every lane, transposed: word t of block b for lane i is at ((b * 16) + t) * LANES + i.
+    private final int[] words;
+    private final int[] schedule = new int[80 * LANES];
+    private final int[] state = new int[5 * LANES];
+
+    public Sha1Lanes(String salt) {
+        byte[] saltBytes = salt.getBytes(StandardCharsets.UTF_8);
+        int maxBlocks = 0;
+        for (int length = Sha1IpHasher.MIN_IP_LENGTH; length <= MAX_IP_LENGTH; length++) {
+            int messageLength = length + saltBytes.length;
+            int blocks = (messageLength + 8) / 64 + 1;
+            byte[] message = new byte[blocks * 64];
+            System.arraycopy(saltBytes, 0, message, length, saltBytes.length);
+            message[messageLength] = (byte) 0x80;
+            long bitLength = messageLength * 8L;
+            for (int i = 0; i < 8; i++) {
+                message[message.length - 1 - i] = (byte) (bitLength >>> (8 * i));
+            }
+
+            templates[length] = new int[blocks * 16];
+            for (int t = 0; t < templates[length].length; t++) {
+                templates[length][t] = wordAt(message, t * 4);
+            }
+            templateHeads[length] = new byte[16];
+            System.arraycopy(message, 0, templateHeads[length], 0, 16);
+            maxBlocks = Math.max(maxBlocks, blocks);
+        }
+        this.maxBlocks = maxBlocks;
+        words = new int[maxBlocks * 16 * LANES];
+    }
+
+    private static int wordAt(byte[] bytes, int offset) {
+        return (bytes[offset] << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Hashes the {@code count} (at most {@link #LANES}) consecutive IPs starting at {@code firstIp} and writes their
+     * 20 byte digests one after another to {@code out} at {@code offset}.
+     */
+    public void hash(int firstIp, int count, byte[] out, int offset) {
+        if (count > LANES) {
+            throw new IllegalArgumentException("count > " + LANES + ": " + count);
+        }
+        int blocks = loadMessages(firstIp, count);
+
+        IntVector h0 = IntVector.broadcast(SPECIES, 0x67452301);
+        IntVector h1 = IntVector.broadcast(SPECIES, 0xEFCDAB89);
+        IntVector h2 = IntVector.broadcast(SPECIES, 0x98BADCFE);
+        IntVector h3 = IntVector.broadcast(SPECIES, 0x10325476);
+        IntVector h4 = IntVector.broadcast(SPECIES, 0xC3D2E1F0);
+        IntVector laneBlockCounts = IntVector.fromArray(SPECIES, laneBlocks, 0);
+
+        for (int block = 0; block < blocks; block++) {
+            System.arraycopy(words, block * 16 * LANES, schedule, 0, 16 * LANES);
+            for (int t = 16; t < 80; t++) {
+                IntVector.fromArray(SPECIES, schedule, (t - 3) * LANES)
+                        .lanewise(VectorOperators.XOR, IntVector.fromArray(SPECIES, schedule, (t - 8) * LANES))
+                        .lanewise(VectorOperators.XOR, IntVector.fromArray(SPECIES, schedule, (t - 14) * LANES))
+                        .lanewise(VectorOperators.XOR, IntVector.fromArray(SPECIES, schedule, (t - 16) * LANES))
+                        .lanewise(VectorOperators.ROL, 1)
+                        .intoArray(schedule, t * LANES);
+            }
+
+            IntVector a = h0;
+            IntVector b = h1;
+            IntVector c = h2;
+            IntVector d = h3;
+            IntVector e = h4;
+            for (int t = 0; t < 20; t++) {
+                IntVector f = b.and(c).or(b.not().and(d));
+                IntVector temp = a.lanewise(VectorOperators.ROL, 5).add(f).add(e).add(0x5A827999)
+                        .add(IntVector.fromArray(SPECIES, schedule, t * LANES));
+                e = d;
+                d = c;
+                c = b.lanewise(VectorOperators.ROL, 30);
+                b = a;
+                a = temp;
+            }
+            for (int t = 20; t < 40; t++) {
+                IntVector f = b.lanewise(VectorOperators.XOR, c).lanewise(VectorOperators.XOR, d);
+                IntVector temp = a.lanewise(VectorOperators.ROL, 5).add(f).add(e).add(0x6ED9EBA1)
+                        .add(IntVector.fromArray(SPECIES, schedule, t * LANES));
+                e = d;
+                d = c;
+                c = b.lanewise(VectorOperators.ROL, 30);
+                b = a;
+                a = temp;
+            }
+            for (int t = 40; t < 60; t++) {
+                IntVector f = b.and(c).or(b.and(d)).or(c.and(d));
+                IntVector temp = a.lanewise(VectorOperators.ROL, 5).add(f).add(e).add(0x8F1BBCDC)
+                        .add(IntVector.fromArray(SPECIES, schedule, t * LANES));
+                e = d;
+                d = c;
+                c = b.lanewise(VectorOperators.ROL, 30);
+                b = a;
+                a = temp;
+            }
+            for (int t = 60; t < 80; t++) {
+                IntVector f = b.lanewise(VectorOperators.XOR, c).lanewise(VectorOperators.XOR, d);
+                IntVector temp = a.lanewise(VectorOperators.ROL, 5).add(f).add(e).add(0xCA62C1D6)
+                        .add(IntVector.fromArray(SPECIES, schedule, t * LANES));
+                e = d;
+                d = c;
+                c = b.lanewise(VectorOperators.ROL, 30);
+                b = a;
+                a = temp;
+            }
+
+            // Lanes whose message has fewer blocks are already done.
+            VectorMask<Integer> active = laneBlockCounts.compare(VectorOperators.GT, block);
+            h0 = h0.add(a, active);
+            h1 = h1.add(b, active);
+            h2 = h2.add(c, active);
+            h3 = h3.add(d, active);
+            h4 = h4.add(e, active);
+        }
+
+        h0.intoArray(state, 0);
+        h1.intoArray(state, LANES);
+        h2.intoArray(state, 2 * LANES);
+        h3.intoArray(state, 3 * LANES);
+        h4.intoArray(state, 4 * LANES);
+        for (int lane = 0; lane < count; lane++) {
+            for (int word = 0; word < 5; word++) {
+                int value = state[word * LANES + lane];
+                int position = offset + lane * PackedRecords.HASH_SIZE + word * 4;
+                out[position] = (byte) (value >>> 24);
+                out[position + 1] = (byte) (value >>> 16);
+                out[position + 2] = (byte) (value >>> 8);
+                out[position + 3] = (byte) value;
+            }
+        }
+    }
+
+    /**
+     * Fills {@link #words} with each lane's padded message. Lanes past {@code count} repeat the last IP.
+     *
+     * @return the most blocks any lane needs
+     */
+    private int loadMessages(int firstIp, int count) {
+        int blocks = 0;
+        for (int lane = 0; lane < LANES; lane++) {
+            int ip = firstIp + Math.min(lane, count - 1);
+            int length = Sha1IpHasher.dottedQuadLength(ip);
+            int[] template = templates[length];
+            laneBlocks[lane] = template.length / 16;
+            blocks = Math.max(blocks, laneBlocks[lane]);
+
+            System.arraycopy(templateHeads[length], 0, head, 0, 16);
+            Sha1IpHasher.writeDottedQuad(ip, head, 0);
+            for (int t = 0; t < 4; t++) {
+                words[t * LANES + lane] = wordAt(head, t * 4);
+            }
+            for (int t = 4; t < maxBlocks * 16; t++) {
+                words[t * LANES + lane] = t < template.length ? template[t] : 0;
+            }
+        }
+        return blocks;
+    }
+}
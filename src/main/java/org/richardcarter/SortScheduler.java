@@ -0,0 +1,137 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import lombok.SneakyThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorts many chunk files at once, as many as fit in a {@link MemoryBudget}.
+ * <p>
+ * Each chunk leases its in-memory size (24 bytes per entry, the same as its file) before it is read, and gives it back
+ * once it has been written. Reading and writing run on their own I/O threads and sorting on another, so while one
+ * chunk is being sorted, the next one that fits is already being read and the previous one written. Sorts run one at a
+ * time; each uses every core (see {@link PackedRecords#sort}), or the cores of the sort pool it's given. A chunk bigger
+ * than the whole budget takes all of it and is sorted on disk by {@link StorageSortExternal}.
+ * <p>
+ * Sorted files are the same as {@link StorageSortRadix} writes, {@link PrefixIndex} sidecar included.
+ */
+public class SortScheduler implements AutoCloseable {
+    // PackedRecords' read and write buffers, on top of the records themselves
+    private static final long IO_OVERHEAD_BYTES = 2L * PackedRecords.RECORD_SIZE * (1 << 18);
+
+    private final long memoryBudgetBytes;
+    private final MemoryBudget budget;
+    private final ExecutorService io;
+    private final ExecutorService sorter;
+    private final ForkJoinPool sortPool;
+    private final Meter readMeter;
+    private final Timer sortTimer;
+    private final Meter writeMeter;
+
+    /**
+     * @param ioThreads how many chunks may be read or written at the same time
+     */
+    public SortScheduler(long memoryBudgetBytes, int ioThreads, Meter readMeter, Timer sortTimer, Meter writeMeter) {
+        this(memoryBudgetBytes, ioThreads, ForkJoinPool.commonPool(), readMeter, sortTimer, writeMeter);
+    }
+
+    /**
+     * @param sortPool the pool in-memory sorts run on, which bounds the cores they take
+     */
+    public SortScheduler(long memoryBudgetBytes, int ioThreads, ForkJoinPool sortPool,
+                         Meter readMeter, Timer sortTimer, Meter writeMeter) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.budget = new MemoryBudget(memoryBudgetBytes);
+        this.io = Executors.newFixedThreadPool(ioThreads, runnable -> {
+            Thread thread = new Thread(runnable, "sort-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sorter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sort");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sortPool = sortPool;
+        this.readMeter = readMeter;
+        this.sortTimer = sortTimer;
+        this.writeMeter = writeMeter;
+    }
+
+    public int getAvailableMegabytes() {
+        return budget.getAvailableMegabytes();
+    }
+
+    @SneakyThrows
+    public static long memoryNeeded(String filename) {
+        return Files.size(Path.of(filename)) + IO_OVERHEAD_BYTES;
+    }
+
+    /**
+     * Sorts every file, admitting them in order as memory frees up, and returns once they're all written.
+     */
+    public void sortAll(List<String> filenames) throws Exception {
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (String filename : filenames) {
+            chunks.add(submit(filename));
+        }
+        CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).get();
+    }
+
+    /**
+     * Waits until the file fits in the memory budget, then starts sorting it.
+     *
+     * @return completes once the sorted file and its index are written
+     */
+    public CompletableFuture<Void> submit(String filename) throws InterruptedException {
+        long needed = memoryNeeded(filename);
+        MemoryBudget.Lease lease = budget.acquire(needed);
+        CompletableFuture<Void> chunk;
+        if (needed > memoryBudgetBytes) {
+            chunk = CompletableFuture.runAsync(() -> new StorageSortExternal(
+                    filename, memoryBudgetBytes, readMeter, sortTimer, writeMeter).sort(), io);
+        } else {
+            chunk = CompletableFuture
+                    .supplyAsync(() -> {
+                        System.out.println(filename);
+                        GenerateChunkFile.deleteCheckpoint(filename);
+                        return PackedRecords.read(filename, readMeter);
+                    }, io)
+                    .thenApplyAsync(records -> {
+                        try (Timer.Context ignored = sortTimer.time()) {
+                            records.sort(sortPool);
+                        }
+                        return records;
+                    }, sorter)
+                    .thenAcceptAsync(records -> {
+                        records.write(filename, writeMeter);
+                        PrefixIndex.fromRecords(records, PrefixIndex.DEFAULT_BITS)
+                                .write(PrefixIndex.filenameFor(filename));
+                    }, io);
+        }
+        return chunk.whenComplete((ignored, e) -> lease.close());
+    }
+
+    /**
+     * Takes no more chunks, and waits for the reads, sorts and writes already running. A chunk that's midway through
+     * being rewritten in place is finished rather than left truncated; one that hadn't started writing is left as is.
+     */
+    @Override
+    @SneakyThrows
+    public void close() {
+        io.shutdown();
+        sorter.shutdown();
+        sorter.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        io.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+}
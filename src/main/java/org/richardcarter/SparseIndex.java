@@ -0,0 +1,140 @@
+package org.richardcarter;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Index over a merged table (see {@link ChunkMerger}): the first 8 hash bytes, as a sort key, of every
+ * {@code stride}-th entry. With the default stride the whole table's index is 32 MB, so it stays on the heap, and it
+ * narrows any lookup down to a block or two of entries that can be read in one go.
+ * <p>
+ * The merged table may be split into segment files of {@code segmentRecords} entries each; entry {@code e} is in
+ * segment {@code e / segmentRecords}. File format: the stride as an int, segmentRecords and the number of entries as
+ * longs, then the keys as longs.
+ */
+public class SparseIndex {
+    public static final int DEFAULT_STRIDE = 1024;
+
+    @Getter
+    private final int stride;
+    @Getter
+    private final long segmentRecords;
+    @Getter
+    private final long countEntries;
+    private final long[] keys;
+
+    private SparseIndex(int stride, long segmentRecords, long countEntries, long[] keys) {
+        this.stride = stride;
+        this.segmentRecords = segmentRecords;
+        this.countEntries = countEntries;
+        this.keys = keys;
+    }
+
+    public int getCountSegments() {
+        return (int) ((countEntries + segmentRecords - 1) / segmentRecords);
+    }
+
+    /**
+     * Index of the first entry that can have the sort key. An entry equal to the key may sit anywhere after the last
+     * indexed key below it.
+     */
+    public long start(long sortKey) {
+        int block = firstBlockNotBelow(sortKey, false);
+        return Math.max(0, block - 1) * (long) stride;
+    }
+
+    /**
+     * Index after the last entry that can have the sort key.
+     */
+    public long end(long sortKey) {
+        int block = firstBlockNotBelow(sortKey, true);
+        return Math.min(countEntries, block * (long) stride);
+    }
+
+    /**
+     * @param strictlyAbove find the first key above sortKey rather than the first key at or above it
+     */
+    private int firstBlockNotBelow(long sortKey, boolean strictlyAbove) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int c = Long.compareUnsigned(keys[middle], sortKey);
+            if (c < 0 || (strictlyAbove && c == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Collects the keys while a merged table is written. Entries have to be added in sorted order.
+     */
+    public static class Builder {
+        private final int stride;
+        private final long segmentRecords;
+        private long[] keys = new long[1024];
+        private long countEntries;
+
+        public Builder(int stride, long segmentRecords) {
+            if (stride <= 0 || segmentRecords <= 0) {
+                throw new IllegalArgumentException("stride " + stride + ", segmentRecords " + segmentRecords);
+            }
+            this.stride = stride;
+            this.segmentRecords = segmentRecords;
+        }
+
+        public void add(long sortKey) {
+            if (countEntries % stride == 0) {
+                int block = (int) (countEntries / stride);
+                if (block == keys.length) {
+                    keys = Arrays.copyOf(keys, keys.length * 2);
+                }
+                keys[block] = sortKey;
+            }
+            countEntries++;
+        }
+
+        public SparseIndex build() {
+            int blocks = (int) ((countEntries + stride - 1) / stride);
+            return new SparseIndex(stride, segmentRecords, countEntries, Arrays.copyOf(keys, blocks));
+        }
+    }
+
+    @SneakyThrows
+    public void write(String filename) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(stride);
+            out.writeLong(segmentRecords);
+            out.writeLong(countEntries);
+            for (long key : keys) {
+                out.writeLong(key);
+            }
+        }
+    }
+
+    @SneakyThrows
+    public static SparseIndex read(String filename) {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Path.of(filename)));
+        int stride = buffer.getInt();
+        long segmentRecords = buffer.getLong();
+        long countEntries = buffer.getLong();
+        long blocks = stride > 0 ? (countEntries + stride - 1) / stride : -1;
+        if (stride <= 0 || segmentRecords <= 0 || countEntries < 0 || buffer.remaining() != blocks * Long.BYTES) {
+            throw new IllegalArgumentException("Not a sparse index: " + filename);
+        }
+        long[] keys = new long[(int) blocks];
+        buffer.asLongBuffer().get(keys);
+        return new SparseIndex(stride, segmentRecords, countEntries, keys);
+    }
+}
@@ -0,0 +1,133 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.richardcarter.PackedRecords.RECORD_SIZE;
+
+/**
+ * Sorts a lookup table file of any size within a fixed memory budget.
+ * The file is read in runs that fit the budget; each run is radix sorted in memory (see {@link PackedRecords}) and
+ * spilled to a temporary run file, then the runs are k-way merged with large sequential reads into a new file that
+ * replaces the original once it's complete. A file that fits in one run is just sorted in memory.
+ * <p>
+ * Also writes the {@link PrefixIndex} sidecar, like {@link StorageSortRadix}.
+ */
+@RequiredArgsConstructor
+public class StorageSortExternal {
+    private static final int MIN_MERGE_BUFFER = 1 << 20;
+    private static final int MAX_MERGE_BUFFER = 64 << 20;
+    // PackedRecords is indexed by int; leave some headroom under the array size limit.
+    private static final long MAX_RUN_RECORDS = Integer.MAX_VALUE - 8;
+
+    private final String filename;
+    private final long memoryBudgetBytes;
+    private final Meter readMeter;
+    private final Timer sortTimer;
+    private final Meter writeMeter;
+
+    @SneakyThrows
+    public void sort() {
+        System.out.println(filename);
+        GenerateChunkFile.deleteCheckpoint(filename);
+        long size = Files.size(Path.of(filename));
+        if ((size % RECORD_SIZE) != 0) {
+            throw new IllegalArgumentException("File not divisible by 24: " + filename);
+        }
+        long entryCount = size / RECORD_SIZE;
+        long runRecords = Math.min(MAX_RUN_RECORDS, memoryBudgetBytes / RECORD_SIZE);
+        if (runRecords <= 0) {
+            throw new IllegalArgumentException("Memory budget too small: " + memoryBudgetBytes);
+        }
+        if (entryCount <= runRecords) {
+            new StorageSortRadix(filename, readMeter, sortTimer, writeMeter).sort();
+            return;
+        }
+
+        List<String> runFilenames = writeSortedRuns(entryCount, (int) runRecords);
+        merge(runFilenames);
+        // only now that the sorted file has replaced the original; until then either one is a whole copy of the table
+        for (String runFilename : runFilenames) {
+            Files.deleteIfExists(Path.of(runFilename));
+        }
+    }
+
+    @SneakyThrows
+    private List<String> writeSortedRuns(long entryCount, int runRecords) {
+        List<String> runFilenames = new ArrayList<>();
+        PackedRecords records = new PackedRecords(runRecords);
+        try (FileChannel in = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            for (long start = 0; start < entryCount; start += runRecords) {
+                int count = (int) Math.min(runRecords, entryCount - start);
+                records.read(in, 0, count, readMeter);
+
+                try (Timer.Context ignored = sortTimer.time()) {
+                    records.sort(0, count);
+                }
+
+                String runFilename = filename + ".run" + runFilenames.size();
+                try (FileChannel out = FileChannel.open(Path.of(runFilename),
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    records.write(out, 0, count, writeMeter);
+                }
+                runFilenames.add(runFilename);
+            }
+        }
+        return runFilenames;
+    }
+
+    @SneakyThrows
+    private void merge(List<String> runFilenames) {
+        int bufferBytes = (int) Math.max(MIN_MERGE_BUFFER,
+                Math.min(MAX_MERGE_BUFFER, memoryBudgetBytes / (runFilenames.size() + 1)));
+        List<RecordReader> readers = new ArrayList<>();
+        for (String runFilename : runFilenames) {
+            readers.add(new RecordReader(runFilename, bufferBytes));
+        }
+
+        // merged next to the original and moved over it once it's on disk, so a failed merge leaves the original
+        Path merged = Path.of(filename + ".tmp");
+        PrefixIndex.Builder index = new PrefixIndex.Builder(PrefixIndex.DEFAULT_BITS);
+        ByteBuffer out = ByteBuffer.allocate(bufferBytes / RECORD_SIZE * RECORD_SIZE);
+        try (RecordMerger merger = new RecordMerger(readers);
+             FileChannel channel = FileChannel.open(merged,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            RecordReader reader;
+            while ((reader = merger.next()) != null) {
+                reader.copyTo(out);
+                index.add(reader.hash0());
+                if (!out.hasRemaining()) {
+                    flush(channel, out);
+                }
+            }
+            flush(channel, out);
+            channel.force(true);
+        } catch (Throwable e) {
+            Files.deleteIfExists(merged);
+            throw e;
+        }
+        Files.move(merged, Path.of(filename), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        index.build().write(PrefixIndex.filenameFor(filename));
+    }
+
+    @SneakyThrows
+    private void flush(FileChannel channel, ByteBuffer out) {
+        out.flip();
+        writeMeter.mark(out.remaining());
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+}
@@ -15,6 +15,9 @@ import java.util.Arrays;
 
 @RequiredArgsConstructor
 public class StorageSortInMemory {
+    private static final Timer READ_TIME = Metrics.timer(StorageSortInMemory.class, "readTime");
+    private static final Timer SORT_TIME = Metrics.timer(StorageSortInMemory.class, "sortTime");
+    private static final Timer WRITE_TIME = Metrics.timer(StorageSortInMemory.class, "writeTime");
 
     private final String filename;
     private final Meter readMeter;
@@ -35,7 +38,8 @@ public class StorageSortInMemory {
         IpAndHash[] entries = new IpAndHash[(int) entryCount];
         int i = 0;
         System.out.println("Reading " + entryCount + " entries...");
-        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(filename))) {
+        try (Timer.Context ignored = READ_TIME.time();
+             BufferedInputStream in = new BufferedInputStream(new FileInputStream(filename))) {
             while (true) {
                 byte[] ip = in.readNBytes(4);
                 if (ip.length != 4) {
@@ -62,12 +66,13 @@ public class StorageSortInMemory {
         //           .collect(Collectors.toList());
         // Finally, changing `entries` to an array and using Arrays.parallelSort was _much_ faster.
         // The sort takes 10 seconds on my computer.
-        try (Timer.Context ignored = sortTimer.time()) {
+        try (Timer.Context ignored = sortTimer.time(); Timer.Context ignored2 = SORT_TIME.time()) {
             Arrays.parallelSort(entries, (i1, i2) -> Arrays.compare(i1.getHash(), i2.getHash()));
         }
 
         System.out.println("Writing the result...");
-        try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(filename))) {
+        try (Timer.Context ignored = WRITE_TIME.time();
+             BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(filename))) {
             for (IpAndHash entry : entries) {
                 out.write(entry.getIp().toBytes());
                 out.write(entry.getHash());
@@ -0,0 +1,61 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import lombok.SneakyThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sorts a lookup table file in memory, like {@link StorageSortInMemory}, but holds the entries in a
+ * {@link PackedRecords} buffer (24 bytes per entry instead of 100+) and sorts them with a radix sort on the hash bytes.
+ * At a quarter of the memory, several chunks can be sorted at once, and there's no per-entry garbage to collect.
+ * It also writes the {@link PrefixIndex} sidecar for the sorted file, unless told not to.
+ */
+public class StorageSortRadix {
+
+    private final String filename;
+    private final Meter readMeter;
+    private final Timer sortTimer;
+    private final Meter writeMeter;
+    private final boolean writeIndex;
+
+    public StorageSortRadix(String filename, Meter readMeter, Timer sortTimer, Meter writeMeter) {
+        this(filename, readMeter, sortTimer, writeMeter, true);
+    }
+
+    /**
+     * @param writeIndex false for files too small to be worth an index, like hash-prefix buckets: every entry of a
+     *                   bucket shares its first bits, so most of a {@link PrefixIndex} over it would be empty
+     */
+    public StorageSortRadix(String filename, Meter readMeter, Timer sortTimer, Meter writeMeter, boolean writeIndex) {
+        this.filename = filename;
+        this.readMeter = readMeter;
+        this.sortTimer = sortTimer;
+        this.writeMeter = writeMeter;
+        this.writeIndex = writeIndex;
+    }
+
+    @SneakyThrows
+    public void sort() {
+        System.out.println(filename);
+        GenerateChunkFile.deleteCheckpoint(filename);
+        PackedRecords records = PackedRecords.read(filename, readMeter);
+        if (records.getSize() <= 0) {
+            throw new IllegalArgumentException("Unexpected entryCount: " + records.getSize());
+        }
+
+        try (Timer.Context ignored = sortTimer.time()) {
+            records.sort();
+        }
+
+        records.write(filename, writeMeter);
+        if (writeIndex) {
+            PrefixIndex.fromRecords(records, PrefixIndex.DEFAULT_BITS).write(PrefixIndex.filenameFor(filename));
+        } else {
+            // an index left over from an earlier table would no longer match
+            Files.deleteIfExists(Path.of(PrefixIndex.filenameFor(filename)));
+        }
+    }
+}
@@ -1,32 +1,173 @@
 package org.richardcarter;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 import lombok.Getter;
 import lombok.SneakyThrows;
 
-import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Appends table records to a file through two large direct buffers: the caller fills one while a background thread
+ * writes the other out, so the generating thread only waits on the disk when the disk is slower than hashing.
+ * Not thread-safe; one writer per generating thread.
+ */
 public class StorageWriter implements AutoCloseable {
+    private static final int BUFFER_BYTES = PackedRecords.RECORD_SIZE * (1 << 17);
 
-    private final BufferedOutputStream output;
+    private static final Meter BYTES_FLUSHED = Metrics.meter(StorageWriter.class, "bytesFlushed");
+    private static final Timer FLUSH_TIME = Metrics.timer(StorageWriter.class, "flushTime");
+    // time the writing thread spent waiting for the previous buffer to reach the disk
+    private static final Timer FLUSH_STALLS = Metrics.timer(StorageWriter.class, "flushStalls");
+
+    private final FileChannel channel;
+    private final ExecutorService flusher;
+    private ByteBuffer filling = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private ByteBuffer flushing = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private Future<?> pendingFlush;
+    private long flushPosition;
     @Getter
     private long fileSize;
 
-    @SneakyThrows
     public StorageWriter(String filename) {
-        output = new BufferedOutputStream(new FileOutputStream(filename));
-        fileSize = 0;
+        this(filename, 0);
+    }
+
+    /**
+     * @param expectedBytes the final size of the file, if known (24 bytes per IP); the file is extended to it up front
+     *                      so it isn't grown a buffer at a time, and trimmed on close if fewer bytes were written
+     */
+    public StorageWriter(String filename, long expectedBytes) {
+        this(filename, expectedBytes, 0);
+    }
+
+    /**
+     * Continues a partly written file: keeps its first {@code appendAt} bytes and writes from there, over anything
+     * after them. With {@code appendAt} 0 the file is started over.
+     */
+    @SneakyThrows
+    public StorageWriter(String filename, long expectedBytes, long appendAt) {
+        channel = appendAt > 0
+                ? FileChannel.open(Path.of(filename), StandardOpenOption.WRITE)
+                : FileChannel.open(Path.of(filename),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (expectedBytes > channel.size()) {
+            channel.write(ByteBuffer.allocate(1), expectedBytes - 1);
+        }
+        flusher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushPosition = appendAt;
+        fileSize = appendAt;
     }
 
     @Override
     public void close() throws Exception {
-        output.close();
+        try {
+            flush();
+            awaitFlush();
+            if (channel.size() > fileSize) {
+                channel.truncate(fileSize);
+            }
+        } finally {
+            flusher.shutdown();
+            channel.close();
+        }
     }
 
+    /**
+     * Writes out everything written so far and forces it to the disk; once this returns, the first
+     * {@link #getFileSize} bytes of the file survive a crash.
+     */
     @SneakyThrows
+    public void sync() {
+        flush();
+        awaitFlush();
+        channel.force(false);
+    }
+
     public void write(IpAddress ip, byte[] hash) {
-        byte[] ipBytes = ip.toBytes();
-        output.write(ipBytes);
-        output.write(hash);
-        fileSize += ipBytes.length + hash.length;
+        write(ip.toInt(), hash, 0);
+    }
+
+    /**
+     * Writes {@code ip} followed by the 20 byte hash at {@code hashes[offset]}.
+     */
+    public void write(int ip, byte[] hashes, int offset) {
+        if (filling.remaining() < PackedRecords.RECORD_SIZE) {
+            flush();
+        }
+        filling.putInt(ip).put(hashes, offset, PackedRecords.HASH_SIZE);
+        fileSize += PackedRecords.RECORD_SIZE;
+    }
+
+    /**
+     * Writes {@code length} bytes of whole records, as stored on disk, from {@code records[offset]}.
+     */
+    public void write(byte[] records, int offset, int length) {
+        if (length % PackedRecords.RECORD_SIZE != 0) {
+            throw new IllegalArgumentException("length is not a multiple of 24: " + length);
+        }
+        int end = offset + length;
+        while (offset < end) {
+            if (!filling.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(filling.remaining(), end - offset);
+            filling.put(records, offset, n);
+            offset += n;
+        }
+        fileSize += length;
+    }
+
+    /**
+     * Hands the filled buffer to the background thread and swaps in the other one, once that one has been written.
+     */
+    private void flush() {
+        awaitFlush();
+        ByteBuffer full = filling;
+        filling = flushing;
+        flushing = full;
+        full.flip();
+        long position = flushPosition;
+        flushPosition += full.remaining();
+        pendingFlush = flusher.submit(() -> {
+            try (Timer.Context ignored = FLUSH_TIME.time()) {
+                long at = position;
+                while (full.hasRemaining()) {
+                    at += channel.write(full, at);
+                }
+            }
+            BYTES_FLUSHED.mark(full.position());
+            full.clear();
+            return null;
+        });
+    }
+
+    @SneakyThrows
+    private void awaitFlush() {
+        if (pendingFlush != null) {
+            try {
+                if (pendingFlush.isDone()) {
+                    pendingFlush.get();
+                } else {
+                    try (Timer.Context ignored = FLUSH_STALLS.time()) {
+                        pendingFlush.get();
+                    }
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+            pendingFlush = null;
+        }
     }
 }
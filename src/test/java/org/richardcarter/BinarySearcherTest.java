@@ -0,0 +1,103 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinarySearcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    PackedRecords sortedRecords(int count) {
+        PackedRecords records = new PackedRecords(count);
+        for (int ip = 0; ip < count; ip++) {
+            records.set(ip, ip, Hasher.calculateHash(IpAddress.fromLong(ip)), 0);
+        }
+        records.sort();
+        return records;
+    }
+
+    String sortedTable(int count) {
+        String filename = tempDir.resolve("table.bin").toString();
+        sortedRecords(count).write(filename, new Meter());
+        return filename;
+    }
+
+    String indexedTable(int count, int bits) {
+        String filename = tempDir.resolve("indexed.bin").toString();
+        PackedRecords records = sortedRecords(count);
+        records.write(filename, new Meter());
+        PrefixIndex.fromRecords(records, bits).write(PrefixIndex.filenameFor(filename));
+        return filename;
+    }
+
+    @Test
+    void findsEveryEntry() throws Exception {
+        try (BinarySearcher searcher = new BinarySearcher(sortedTable(5000))) {
+            assertEquals(5000, searcher.getCountEntries());
+            for (int ip = 0; ip < 5000; ip++) {
+                IpAddress expected = IpAddress.fromLong(ip);
+                assertEquals(expected, searcher.search(Hasher.calculateHash(expected)));
+            }
+        }
+    }
+
+    @Test
+    void missesReturnNull() throws Exception {
+        try (BinarySearcher searcher = new BinarySearcher(sortedTable(5000))) {
+            assertNull(searcher.search(Hasher.calculateHash(IpAddress.fromLong(5000))));
+            assertNull(searcher.search(new byte[20]));
+            byte[] max = new byte[20];
+            Arrays.fill(max, (byte) 0x7F);
+            assertNull(searcher.search(max));
+        }
+    }
+
+    @Test
+    void prefixIndexMatchesTableFile() {
+        String filename = indexedTable(5000, 8);
+        PrefixIndex expected = PrefixIndex.read(PrefixIndex.filenameFor(filename));
+        PrefixIndex actual = PrefixIndex.fromTableFile(filename, 8);
+        for (int prefix = 0; prefix < 256; prefix++) {
+            assertEquals(expected.start(prefix), actual.start(prefix));
+            assertEquals(expected.end(prefix), actual.end(prefix));
+        }
+        assertEquals(5000, actual.getCountEntries());
+    }
+
+    @Test
+    void searchWithPrefixIndex() throws Exception {
+        String filename = indexedTable(5000, 4);
+        for (boolean interpolate : new boolean[] {false, true}) {
+            try (BinarySearcher searcher = new BinarySearcher(filename, interpolate)) {
+                for (int ip = 0; ip < 5000; ip++) {
+                    IpAddress expected = IpAddress.fromLong(ip);
+                    assertEquals(expected, searcher.search(Hasher.calculateHash(expected)));
+                }
+                for (int ip = 5000; ip < 6000; ip++) {
+                    assertNull(searcher.search(Hasher.calculateHash(IpAddress.fromLong(ip))));
+                }
+            }
+        }
+    }
+
+    @Test
+    void concurrentSearches() throws Exception {
+        try (BinarySearcher searcher = new BinarySearcher(sortedTable(5000))) {
+            Random random = new Random(3);
+            int[] ips = random.ints(20_000, 0, 5000).toArray();
+            IntStream.of(ips).parallel().forEach(ip -> {
+                IpAddress expected = IpAddress.fromLong(ip);
+                assertEquals(expected, searcher.search(Hasher.calculateHash(expected)));
+            });
+        }
+    }
+}
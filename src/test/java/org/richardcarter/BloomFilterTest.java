@@ -0,0 +1,105 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void noFalseNegativesAndFewFalsePositives() {
+        Random random = new Random(19);
+        int count = 200_000;
+        byte[][] hashes = new byte[count][PackedRecords.HASH_SIZE];
+        BloomFilter filter = new BloomFilter(count, BloomFilter.DEFAULT_BITS_PER_KEY);
+        for (byte[] hash : hashes) {
+            random.nextBytes(hash);
+            filter.add(hash);
+        }
+        for (byte[] hash : hashes) {
+            assertTrue(filter.mightContain(hash));
+        }
+
+        int falsePositives = 0;
+        byte[] other = new byte[PackedRecords.HASH_SIZE];
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(other);
+            if (filter.mightContain(other)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < count / 50, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void builtFromTableFilesAndReadBack() throws Exception {
+        List<String> chunks = new ArrayList<>();
+        IpRange[] ranges = new IpRange(0xC0A80000L, 0xC0A80000L + 50_000).split(2);
+        for (int i = 0; i < ranges.length; i++) {
+            String filename = tempDir.resolve("chunk" + i + ".bin").toString();
+            new GenerateChunkFile(ranges[i], filename, new Meter()).run();
+            chunks.add(filename);
+        }
+
+        String filename = tempDir.resolve("table.bloom").toString();
+        BloomFilter.fromTableFiles(chunks, BloomFilter.DEFAULT_BITS_PER_KEY, new Meter()).write(filename);
+        BloomFilter filter = BloomFilter.read(filename);
+        for (long ip = ranges[0].getStartInclusive(); ip < ranges[1].getEndExclusive(); ip++) {
+            assertTrue(filter.mightContain(Hasher.calculateHash(IpAddress.fromLong(ip))));
+        }
+
+        Meter rejected = new Meter();
+        try (HashLookup lookup = new PrefilteredLookup(filter, new ScanLookup(chunks), rejected)) {
+            IpAddress inTable = IpAddress.fromLong(0xC0A80000L + 123);
+            assertEquals(inTable, lookup.search(Hasher.calculateHash(inTable)));
+            for (long ip = 0; ip < 10_000; ip++) {
+                assertNull(lookup.search(Hasher.calculateHash(IpAddress.fromLong(ip))));
+            }
+        }
+        assertTrue(rejected.getCount() > 9_700, "rejected: " + rejected.getCount());
+    }
+
+    /**
+     * A plain linear scan over the table files, to check that lookups get through the filter unchanged.
+     */
+    private static class ScanLookup implements HashLookup {
+        private final List<String> chunks;
+
+        ScanLookup(List<String> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public IpAddress search(byte[] hash) {
+            long hash0 = PackedRecords.sortKeyOf(hash, 0);
+            long hash1 = PackedRecords.sortKeyOf(hash, 8);
+            int hash2 = PackedRecords.sortKeyOfInt(hash, 16);
+            for (String chunk : chunks) {
+                try (RecordReader reader = new RecordReader(chunk, 1 << 16)) {
+                    while (reader.next()) {
+                        if (reader.hash0() == hash0 && reader.hash1() == hash1 && reader.hash2() == hash2) {
+                            return IpAddress.fromLong(reader.ip() & 0xFFFFFFFFL);
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
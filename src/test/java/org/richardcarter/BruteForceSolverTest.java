@@ -0,0 +1,52 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BruteForceSolverTest {
+
+    @Test
+    void findsTargetsInRange() {
+        List<byte[]> targets = new ArrayList<>();
+        for (int ip = 7; ip < 3_000_000; ip += 250_001) {
+            targets.add(Hasher.calculateHash(IpAddress.fromLong(ip)));
+        }
+        targets.add(Hasher.calculateHash(IpAddress.fromLong(7))); // duplicate
+        targets.add(Hasher.calculateHash(IpAddress.fromLong(5_000_000))); // outside the range
+
+        BruteForceSolver solver = new BruteForceSolver(targets);
+        assertEquals(targets.size() - 1, solver.getCountTargets());
+
+        HexFormat hex = HexFormat.of();
+        Map<String, IpAddress> found = new ConcurrentHashMap<>();
+        Meter meter = new Meter();
+        int resolved = solver.solve(new IpRange(0, 3_000_000), (hash, ip) -> {
+            assertNull(found.put(hex.formatHex(hash), ip));
+        }, meter);
+
+        assertEquals(12, resolved);
+        assertEquals(3_000_000, meter.getCount());
+        for (int ip = 7; ip < 3_000_000; ip += 250_001) {
+            IpAddress expected = IpAddress.fromLong(ip);
+            assertEquals(expected, found.get(hex.formatHex(Hasher.calculateHash(expected))));
+        }
+    }
+
+    @Test
+    void stopsOnceEverythingIsFound() {
+        BruteForceSolver solver = new BruteForceSolver(List.of(
+                Hasher.calculateHash(IpAddress.fromLong(1)),
+                Hasher.calculateHash(IpAddress.fromLong(1000))));
+        Meter meter = new Meter();
+        assertEquals(2, solver.solve(IpRange.ALL, (hash, ip) -> { }, meter));
+        assertTrue(meter.getCount() < IpRange.END / 100, meter.getCount() + " hashed");
+    }
+}
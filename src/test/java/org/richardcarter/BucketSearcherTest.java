@@ -0,0 +1,44 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketSearcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void generateSortAndSearchBuckets() throws Exception {
+        String pattern = tempDir.resolve("bucket%d.bin").toString();
+        int bits = 4;
+        try (BucketWriter writer = new BucketWriter(pattern, bits)) {
+            new GenerateBucketFiles(new IpRange(0, 10_000), writer, new Meter()).run();
+            new GenerateBucketFiles(new IpRange(10_000, 20_000), writer, new Meter()).run();
+        }
+
+        long total = 0;
+        for (int bucket = 0; bucket < 1 << bits; bucket++) {
+            String filename = String.format(pattern, bucket);
+            new StorageSortRadix(filename, new Meter(), new Timer(), new Meter(), false).sort();
+            total += Files.size(Path.of(filename));
+            assertFalse(Files.exists(Path.of(PrefixIndex.filenameFor(filename))));
+        }
+        assertEquals(20_000 * 24L, total);
+
+        try (BucketSearcher searcher = new BucketSearcher(pattern, bits)) {
+            for (int ip = 0; ip < 20_000; ip++) {
+                IpAddress expected = IpAddress.fromLong(ip);
+                assertEquals(expected, searcher.search(Hasher.calculateHash(expected)));
+            }
+            assertNull(searcher.search(Hasher.calculateHash(IpAddress.fromLong(20_000))));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BuildPipelineTest {
+
+    @TempDir
+    Path tempDir;
+
+    void assertBuildsLikeSortedChunks(long memoryBudget, IpRange[] ranges) throws Exception {
+        List<String> actual = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i++) {
+            actual.add(tempDir.resolve("actual" + memoryBudget + "-" + i + ".bin").toString());
+        }
+        Meter hashRate = new Meter();
+        try (BuildPipeline pipeline = new BuildPipeline(2, 2, memoryBudget, 3,
+                hashRate, new Meter(), new Timer(), new Meter())) {
+            pipeline.build(ranges, actual);
+            assertEquals(new MemoryBudget(memoryBudget).getTotalMegabytes(), pipeline.getAvailableMegabytes());
+        }
+        assertEquals(ranges[ranges.length - 1].getEndExclusive() - ranges[0].getStartInclusive(), hashRate.getCount());
+
+        for (int i = 0; i < ranges.length; i++) {
+            String expected = tempDir.resolve("expected" + memoryBudget + "-" + i + ".bin").toString();
+            new GenerateSortedChunk(ranges[i], expected, new Meter(), new Timer(), new Meter()).run();
+            assertArrayEquals(Files.readAllBytes(Path.of(expected)), Files.readAllBytes(Path.of(actual.get(i))));
+            assertArrayEquals(Files.readAllBytes(Path.of(PrefixIndex.filenameFor(expected))),
+                    Files.readAllBytes(Path.of(PrefixIndex.filenameFor(actual.get(i)))));
+        }
+    }
+
+    @Test
+    void sortsChunksWhileGeneratingTheRest() throws Exception {
+        assertBuildsLikeSortedChunks(64L << 20, new IpRange(0xC0A80000L, 0xC0A80000L + 300_000).split(6));
+    }
+
+    @Test
+    void sortsChunksBiggerThanTheBudgetOnDisk() throws Exception {
+        assertBuildsLikeSortedChunks(1L << 20, new IpRange(0, 100_000).split(2));
+    }
+
+    @Test
+    void rejectsMismatchedFilenames() {
+        try (BuildPipeline pipeline = new BuildPipeline(1, 1, 1L << 20, 2,
+                new Meter(), new Meter(), new Timer(), new Meter())) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> pipeline.build(IpRange.ALL.split(2), List.of("only-one.bin")));
+        }
+    }
+}
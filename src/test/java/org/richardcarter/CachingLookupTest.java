@@ -0,0 +1,97 @@
+package org.richardcarter;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingLookupTest {
+
+    /**
+     * Knows the first thousand IPs only, and counts how often it is asked.
+     */
+    private static class CountingLookup implements HashLookup {
+        final AtomicInteger searches = new AtomicInteger();
+        final Map<String, IpAddress> table = new HashMap<>();
+
+        CountingLookup() {
+            for (long ip = 0; ip < 1_000; ip++) {
+                table.put(HexFormat.of().formatHex(hashOf(ip)), IpAddress.fromLong(ip));
+            }
+        }
+
+        @Override
+        public IpAddress search(byte[] hash) {
+            searches.incrementAndGet();
+            return table.get(HexFormat.of().formatHex(hash));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static byte[] hashOf(long ip) {
+        return Hasher.calculateHash(IpAddress.fromLong(ip));
+    }
+
+    @Test
+    void cachesHitsAndMisses() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        CountingLookup delegate = new CountingLookup();
+        try (CachingLookup cache = new CachingLookup(delegate, 1_000, metrics)) {
+            for (int round = 0; round < 3; round++) {
+                assertEquals(IpAddress.fromLong(42), cache.search(hashOf(42)));
+                assertNull(cache.search(hashOf(0x0A000000L)));
+            }
+            assertEquals(2, delegate.searches.get());
+            assertEquals(4, metrics.counter("cacheHits").getCount());
+            assertEquals(2, metrics.counter("cacheMisses").getCount());
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    void staysBoundedAndKeepsHotEntriesThroughAScan() throws Exception {
+        CountingLookup delegate = new CountingLookup();
+        try (CachingLookup cache = new CachingLookup(delegate, 1_600, new MetricRegistry())) {
+            // hot entries, each looked up twice so they are protected
+            for (long ip = 0; ip < 320; ip++) {
+                cache.search(hashOf(ip));
+                cache.search(hashOf(ip));
+            }
+            // a long scan of one-off lookups
+            for (long ip = 0x0A000000L; ip < 0x0A000000L + 20_000; ip++) {
+                cache.search(hashOf(ip));
+            }
+            assertTrue(cache.size() <= 1_600, "size " + cache.size());
+
+            int before = delegate.searches.get();
+            for (long ip = 0; ip < 320; ip++) {
+                assertEquals(IpAddress.fromLong(ip), cache.search(hashOf(ip)));
+            }
+            assertEquals(before, delegate.searches.get());
+        }
+    }
+
+    @Test
+    void answersStayRightUnderChurn() throws Exception {
+        CountingLookup delegate = new CountingLookup();
+        try (CachingLookup cache = new CachingLookup(delegate, 160, new MetricRegistry())) {
+            Random random = new java.util.Random(7);
+            for (int i = 0; i < 50_000; i++) {
+                // half in the table, half not, over a range ten times the cache
+                long ip = random.nextInt(2_000);
+                IpAddress expected = ip < 1_000 ? IpAddress.fromLong(ip) : null;
+                assertEquals(expected, cache.search(hashOf(ip)), "ip " + ip);
+            }
+            assertTrue(cache.size() <= 160, "size " + cache.size());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedSearcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    String pattern() {
+        return tempDir.resolve("chunk%d.bin").toString();
+    }
+
+    void writeChunk(int chunk, int startIp, int count) {
+        PackedRecords records = new PackedRecords(count);
+        for (int i = 0; i < count; i++) {
+            records.set(i, startIp + i, Hasher.calculateHash(IpAddress.fromLong(startIp + i)), 0);
+        }
+        records.sort();
+        records.write(String.format(pattern(), chunk), new Meter());
+    }
+
+    @Test
+    void searchesAllChunks() throws Exception {
+        writeChunk(0, 0, 1000);
+        writeChunk(1, 1000, 1000);
+        writeChunk(2, 2000, 1000);
+
+        Timer latency = new Timer();
+        try (ChunkedSearcher searcher = ChunkedSearcher.open(pattern(), 3, latency)) {
+            for (int ip = 0; ip < 3000; ip += 7) {
+                IpAddress expected = IpAddress.fromLong(ip);
+                assertEquals(expected, searcher.search(Hasher.calculateHash(expected)));
+            }
+            assertNull(searcher.search(Hasher.calculateHash(IpAddress.fromLong(3000))));
+        }
+        assertEquals(3000 / 7 + 2, latency.getCount());
+    }
+
+    @Test
+    void concurrentSearchesEachGetEveryChunk() throws Exception {
+        writeChunk(0, 0, 1000);
+        writeChunk(1, 1000, 1000);
+        List<String> filenames = List.of(String.format(pattern(), 0), String.format(pattern(), 1));
+
+        Timer latency = new Timer();
+        try (ChunkedSearcher searcher = new ChunkedSearcher(filenames, 4, latency)) {
+            ExecutorService clients = Executors.newFixedThreadPool(4);
+            List<Future<?>> results = new ArrayList<>();
+            for (int client = 0; client < 4; client++) {
+                int first = client;
+                results.add(clients.submit(() -> {
+                    for (int ip = first; ip < 2000; ip += 4) {
+                        IpAddress expected = IpAddress.fromLong(ip);
+                        assertEquals(expected, searcher.search(Hasher.calculateHash(expected)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            clients.shutdown();
+        }
+        assertEquals(2000, latency.getCount());
+        assertThrows(IllegalArgumentException.class, () -> new ChunkedSearcher(List.of(), 0, new Timer()));
+    }
+}
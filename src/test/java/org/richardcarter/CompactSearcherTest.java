@@ -0,0 +1,41 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactSearcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writeSortAndSearch() throws Exception {
+        String filename = tempDir.resolve("compact.bin").toString();
+        try (CompactStorageWriter writer = new CompactStorageWriter(filename)) {
+            for (int ip = 0; ip < 20_000; ip++) {
+                IpAddress ipAddress = IpAddress.fromLong(ip);
+                writer.write(ipAddress, Hasher.calculateHash(ipAddress));
+            }
+        }
+        assertEquals(20_000 * 8L, Files.size(Path.of(filename)));
+
+        new CompactStorageSort(filename, new Meter(), new Timer(), new Meter()).sort();
+
+        try (CompactSearcher searcher = new CompactSearcher(filename)) {
+            for (int ip = 0; ip < 20_000; ip++) {
+                IpAddress expected = IpAddress.fromLong(ip);
+                assertEquals(expected, searcher.search(Hasher.calculateHash(expected)));
+            }
+            for (int ip = 20_000; ip < 21_000; ip++) {
+                assertNull(searcher.search(Hasher.calculateHash(IpAddress.fromLong(ip))));
+            }
+        }
+    }
+}
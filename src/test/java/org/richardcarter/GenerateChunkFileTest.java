@@ -0,0 +1,117 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenerateChunkFileTest {
+    private static final IpRange RANGE = new IpRange(0xC0A80000L, 0xC0A80000L + 50_000);
+    private static final long CHECKPOINT_IPS = 4 * GenerateChunkFile.BATCH;
+
+    @TempDir
+    Path tempDir;
+
+    private byte[] freshlyGenerated() throws Exception {
+        String expected = tempDir.resolve("expected.bin").toString();
+        new GenerateChunkFile(RANGE, expected, new Meter(), CHECKPOINT_IPS).run();
+        return Files.readAllBytes(Path.of(expected));
+    }
+
+    // what a crash after the checkpoint at nextIp leaves behind: the records before it, then a torn write
+    private static void simulateCrash(String filename, long nextIp) throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            file.setLength((nextIp - RANGE.getStartInclusive()) * PackedRecords.RECORD_SIZE);
+            file.seek(file.length());
+            file.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        }
+        writeCheckpoint(filename, nextIp);
+    }
+
+    private static void writeCheckpoint(String filename, long nextIp) throws Exception {
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(GenerateChunkFile.checkpointFilenameFor(filename)))) {
+            out.writeLong(RANGE.getStartInclusive());
+            out.writeLong(RANGE.getEndExclusive());
+            out.writeLong(nextIp);
+        }
+    }
+
+    @Test
+    void resumesFromTheLastCheckpoint() throws Exception {
+        String filename = tempDir.resolve("chunk.bin").toString();
+        new GenerateChunkFile(RANGE, filename, new Meter(), CHECKPOINT_IPS).run();
+        long nextIp = RANGE.getStartInclusive() + 2 * CHECKPOINT_IPS;
+        simulateCrash(filename, nextIp);
+
+        Meter meter = new Meter();
+        new GenerateChunkFile(RANGE, filename, meter, CHECKPOINT_IPS).run();
+        assertEquals(RANGE.getEndExclusive() - nextIp, meter.getCount());
+        assertArrayEquals(freshlyGenerated(), Files.readAllBytes(Path.of(filename)));
+    }
+
+    @Test
+    void startsOverIfTheFileDoesNotMatchItsCheckpoint() throws Exception {
+        String filename = tempDir.resolve("chunk.bin").toString();
+        new GenerateChunkFile(RANGE, filename, new Meter(), CHECKPOINT_IPS).run();
+        long nextIp = RANGE.getStartInclusive() + CHECKPOINT_IPS;
+        simulateCrash(filename, nextIp);
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            file.seek((nextIp - 1 - RANGE.getStartInclusive()) * PackedRecords.RECORD_SIZE + PackedRecords.IP_SIZE);
+            file.write(0);
+        }
+
+        Meter meter = new Meter();
+        new GenerateChunkFile(RANGE, filename, meter, CHECKPOINT_IPS).run();
+        assertEquals(RANGE.size(), meter.getCount());
+        assertArrayEquals(freshlyGenerated(), Files.readAllBytes(Path.of(filename)));
+    }
+
+    @Test
+    void skipsACompleteChunk() throws Exception {
+        String filename = tempDir.resolve("chunk.bin").toString();
+        new GenerateChunkFile(RANGE, filename, new Meter(), CHECKPOINT_IPS).run();
+
+        Meter meter = new Meter();
+        GenerateChunkFile rerun = new GenerateChunkFile(RANGE, filename, meter, CHECKPOINT_IPS);
+        rerun.run();
+        assertEquals(0, meter.getCount());
+        assertEquals(RANGE.getEndExclusive(), rerun.getCurrentIp());
+        assertEquals(RANGE.size() * PackedRecords.RECORD_SIZE, Files.size(Path.of(filename)));
+    }
+
+    @Test
+    void ignoresACheckpointForAnotherRange() throws Exception {
+        String filename = tempDir.resolve("chunk.bin").toString();
+        new GenerateChunkFile(new IpRange(0, 10_000), filename, new Meter(), CHECKPOINT_IPS).run();
+
+        Meter meter = new Meter();
+        new GenerateChunkFile(RANGE, filename, meter, CHECKPOINT_IPS).run();
+        assertEquals(RANGE.size(), meter.getCount());
+        assertArrayEquals(freshlyGenerated(), Files.readAllBytes(Path.of(filename)));
+    }
+
+    @Test
+    void sortingForgetsTheCheckpointAndRegeneratingForgetsTheIndex() throws Exception {
+        String filename = tempDir.resolve("chunk.bin").toString();
+        new GenerateChunkFile(RANGE, filename, new Meter(), CHECKPOINT_IPS).run();
+        new StorageSortRadix(filename, new Meter(), new Timer(), new Meter()).sort();
+        assertFalse(Files.exists(Path.of(GenerateChunkFile.checkpointFilenameFor(filename))));
+
+        // a checkpoint that outlived the sort mustn't keep the old index alive once the chunk is regenerated
+        writeCheckpoint(filename, RANGE.getEndExclusive());
+        Meter meter = new Meter();
+        new GenerateChunkFile(RANGE, filename, meter, CHECKPOINT_IPS).run();
+        assertEquals(RANGE.size(), meter.getCount());
+        assertFalse(Files.exists(Path.of(PrefixIndex.filenameFor(filename))));
+        assertArrayEquals(freshlyGenerated(), Files.readAllBytes(Path.of(filename)));
+    }
+}
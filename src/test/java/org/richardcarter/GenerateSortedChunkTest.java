@@ -0,0 +1,79 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenerateSortedChunkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void matchesGenerateThenSort() throws Exception {
+        IpRange range = new IpRange(1_000_000, 1_250_003);
+
+        String expected = tempDir.resolve("expected.bin").toString();
+        new GenerateChunkFile(range, expected, new Meter()).run();
+        new StorageSortRadix(expected, new Meter(), new Timer(), new Meter()).sort();
+
+        String actual = tempDir.resolve("actual.bin").toString();
+        Meter hashRate = new Meter();
+        new GenerateSortedChunk(range, actual, hashRate, new Timer(), new Meter()).run();
+
+        assertEquals(range.size(), hashRate.getCount());
+        assertArrayEquals(Files.readAllBytes(Path.of(expected)), Files.readAllBytes(Path.of(actual)));
+        assertArrayEquals(Files.readAllBytes(Path.of(PrefixIndex.filenameFor(expected))),
+                Files.readAllBytes(Path.of(PrefixIndex.filenameFor(actual))));
+    }
+
+    @Test
+    void memoryBudgetBlocksUntilReleased() throws Exception {
+        MemoryBudget budget = new MemoryBudget(10L << 20);
+        MemoryBudget.Lease first = budget.acquire(6L << 20);
+        assertEquals(4, budget.getAvailableMegabytes());
+
+        Thread second = new Thread(() -> {
+            try (MemoryBudget.Lease ignored = budget.acquire(5L << 20)) {
+                assertEquals(5, budget.getAvailableMegabytes());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        second.start();
+        second.join(200);
+        assertTrue(second.isAlive());
+
+        first.close();
+        second.join();
+        assertEquals(10, budget.getAvailableMegabytes());
+
+        // bigger than the whole budget: runs alone rather than never
+        try (MemoryBudget.Lease ignored = budget.acquire(1L << 40)) {
+            assertEquals(0, budget.getAvailableMegabytes());
+        }
+    }
+
+    @Test
+    void chunksFitTheMemoryBudget() {
+        assertEquals(8, GenerateSortedChunk.chunksFor(1L << 40, 8));
+        // 8 chunks of the 96 GB table would be 12 GB each; 6 GB allows no more than 256M entries a chunk
+        int chunks = GenerateSortedChunk.chunksFor(6L << 30, 8);
+        assertEquals(16, chunks);
+        for (IpRange range : IpRange.ALL.split(chunks)) {
+            assertTrue(GenerateSortedChunk.memoryNeeded(range) <= 6L << 30);
+        }
+        // one or two cores: still no chunk over PackedRecords' limit
+        chunks = GenerateSortedChunk.chunksFor(1L << 40, 1);
+        for (IpRange range : IpRange.ALL.split(chunks)) {
+            assertTrue(range.size() <= Integer.MAX_VALUE);
+        }
+        assertThrows(IllegalArgumentException.class, () -> GenerateSortedChunk.chunksFor(10, 1));
+    }
+}
@@ -0,0 +1,34 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashPipelineTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void matchesSingleThreadedGeneration() throws Exception {
+        // several laps of the rings, ending in a partial block
+        IpRange range = new IpRange(0xFFFFFFFFL - HashPipeline.BATCH_IPS * 37L, IpRange.END);
+
+        Path expected = tempDir.resolve("expected.bin");
+        new GenerateChunkFile(range, expected.toString(), new Meter()).run();
+
+        Path actual = tempDir.resolve("actual.bin");
+        Meter hashRate = new Meter();
+        try (StorageWriter writer = new StorageWriter(actual.toString())) {
+            new HashPipeline(range, 3, hashRate).run(writer);
+        }
+
+        assertEquals(range.size(), hashRate.getCount());
+        assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(actual));
+    }
+}
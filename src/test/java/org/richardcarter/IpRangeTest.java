@@ -0,0 +1,70 @@
+package org.richardcarter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpRangeTest {
+
+    @Test
+    void splitCoversEveryAddressIncludingTheLast() {
+        IpRange[] ranges = IpRange.ALL.split(7);
+        assertEquals(0, ranges[0].getStartInclusive());
+        for (int i = 1; i < ranges.length; i++) {
+            assertEquals(ranges[i - 1].getEndExclusive(), ranges[i].getStartInclusive());
+            assertTrue(Math.abs(ranges[i].size() - ranges[0].size()) <= 1);
+        }
+        assertEquals(IpRange.END, ranges[ranges.length - 1].getEndExclusive());
+        assertTrue(ranges[ranges.length - 1].contains(IpAddress.MAX_VALUE.toInt()));
+    }
+
+    @Test
+    void streamVisitsEachAddressInOrder() {
+        IpRange range = new IpRange(0xFFFFFF00L, IpRange.END);
+        int[] ips = range.stream().toArray();
+        assertEquals(256, ips.length);
+        for (int i = 0; i < ips.length; i++) {
+            assertEquals(0xFFFFFF00 + i, ips[i]);
+        }
+        assertEquals(IpAddress.MAX_VALUE, IpAddress.fromInt(ips[255]));
+    }
+
+    @Test
+    void spliteratorSplitsWithoutOverlap() {
+        IpRange range = new IpRange(10, 1_000_011);
+        Spliterator.OfInt rest = range.spliterator();
+        Spliterator.OfInt prefix = rest.trySplit();
+        assertEquals(range.size(), prefix.estimateSize() + rest.estimateSize());
+
+        AtomicLong sum = new AtomicLong();
+        prefix.forEachRemaining((int ip) -> sum.addAndGet(ip));
+        rest.forEachRemaining((int ip) -> sum.addAndGet(ip));
+        assertEquals(range.stream().asLongStream().sum(), sum.get());
+        assertEquals(range.size(), range.stream().parallel().count());
+
+        Spliterator.OfInt single = new IpRange(5, 6).spliterator();
+        assertNull(single.trySplit());
+    }
+
+    @Test
+    void intConversions() {
+        IpAddress ip = new IpAddress(200, 1, 0, 255);
+        assertEquals(ip.toLong(), ip.toInt() & 0xFFFFFFFFL);
+        assertEquals(ip, IpAddress.fromInt(ip.toInt()));
+
+        byte[] out = new byte[6];
+        IpAddress.toBytes(ip.toInt(), out, 2);
+        assertArrayEquals(ip.toBytes(), Arrays.copyOfRange(out, 2, 6));
+    }
+
+    @Test
+    void rejectsOutOfBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new IpRange(-1, 5));
+        assertThrows(IllegalArgumentException.class, () -> new IpRange(0, IpRange.END + 1));
+        assertThrows(IllegalArgumentException.class, () -> new IpRange(6, 5));
+    }
+}
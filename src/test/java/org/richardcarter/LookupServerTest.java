@@ -0,0 +1,70 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LookupServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void answersSingleAndBatchedLookups() throws Exception {
+        IpRange range = new IpRange(0xC0A80000L, 0xC0A80000L + 10_000);
+        String chunk = tempDir.resolve("chunk.bin").toString();
+        new GenerateSortedChunk(range, chunk, new Meter(), new Timer(), new Meter()).run();
+
+        MetricRegistry metrics = new MetricRegistry();
+        ChunkedSearcher searcher = new ChunkedSearcher(List.of(chunk), new Timer());
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        try (LookupServer server = new LookupServer(searcher, address, 2, metrics)) {
+            server.start();
+            String url = "http://localhost:" + server.getPort() + "/lookup";
+            HttpClient client = HttpClient.newHttpClient();
+
+            String inTable = hexHashOf(0xC0A80000L + 77);
+            HttpResponse<String> found = client.send(HttpRequest.newBuilder(URI.create(url + "?hash=" + inTable))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, found.statusCode());
+            assertEquals("192.168.0.77\n", found.body());
+
+            String notInTable = hexHashOf(0x0A000001L);
+            HttpResponse<String> missing = client.send(HttpRequest.newBuilder(URI.create(url + "?hash=" + notInTable))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(404, missing.statusCode());
+
+            HttpResponse<String> malformed = client.send(HttpRequest.newBuilder(URI.create(url + "?hash=abc"))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(400, malformed.statusCode());
+
+            String batch = inTable + "\n" + notInTable + "\n\n" + hexHashOf(0xC0A80000L + 9_999) + "\n";
+            HttpResponse<String> batched = client.send(HttpRequest.newBuilder(URI.create(url))
+                    .POST(HttpRequest.BodyPublishers.ofString(batch)).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, batched.statusCode());
+            assertEquals(inTable + " 192.168.0.77\n"
+                    + notInTable + " -\n"
+                    + hexHashOf(0xC0A80000L + 9_999) + " 192.168.39.15\n", batched.body());
+        }
+        assertEquals(5, metrics.timer("lookupLatency").getCount());
+        assertEquals(4, metrics.meter("requests").getCount());
+    }
+
+    private static String hexHashOf(long ip) {
+        return HexFormat.of().formatHex(Hasher.calculateHash(IpAddress.fromLong(ip)));
+    }
+}
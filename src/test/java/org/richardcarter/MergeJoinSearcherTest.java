@@ -0,0 +1,61 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergeJoinSearcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    String writeChunk(int chunk, int startIp, int count) {
+        PackedRecords records = new PackedRecords(count);
+        for (int i = 0; i < count; i++) {
+            records.set(i, startIp + i, Hasher.calculateHash(IpAddress.fromLong(startIp + i)), 0);
+        }
+        records.sort();
+        String filename = tempDir.resolve("chunk" + chunk + ".bin").toString();
+        records.write(filename, new Meter());
+        return filename;
+    }
+
+    @Test
+    void findsTargetsInAllChunks() throws Exception {
+        List<String> chunks = List.of(writeChunk(0, 0, 2000), writeChunk(1, 2000, 2000));
+
+        HexFormat hex = HexFormat.of();
+        List<String> lines = new ArrayList<>();
+        for (int ip = 0; ip < 5000; ip += 3) {
+            lines.add(hex.formatHex(Hasher.calculateHash(IpAddress.fromLong(ip))));
+        }
+        lines.add("");
+        Path input = tempDir.resolve("hashes.txt");
+        Files.write(input, lines);
+
+        MergeJoinSearcher searcher = new MergeJoinSearcher(MergeJoinSearcher.readHexFile(input.toString()));
+        assertEquals(1667, searcher.getCountTargets());
+
+        Map<String, IpAddress> found = new ConcurrentHashMap<>();
+        Meter readMeter = new Meter();
+        searcher.searchAll(chunks, (hash, ip) -> found.put(hex.formatHex(hash), ip), readMeter);
+        assertEquals(2 * 2000 * 24L, readMeter.getCount());
+
+        for (int ip = 0; ip < 5000; ip += 3) {
+            IpAddress expected = IpAddress.fromLong(ip);
+            String key = hex.formatHex(Hasher.calculateHash(expected));
+            assertEquals(ip < 4000 ? expected : null, found.get(key));
+        }
+        assertEquals(1334, found.size());
+    }
+}
@@ -0,0 +1,67 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergedSearcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    String writeChunk(int chunk, IpRange range) {
+        String filename = tempDir.resolve("chunk" + chunk + ".bin").toString();
+        new GenerateSortedChunk(range, filename, new Meter(), new Timer(), new Meter()).run();
+        return filename;
+    }
+
+    @Test
+    void mergesChunksAndFindsEveryEntry() throws Exception {
+        IpRange[] ranges = new IpRange(0, 10_000).split(3);
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i++) {
+            chunks.add(writeChunk(i, ranges[i]));
+        }
+
+        String pattern = tempDir.resolve("merged%d.bin").toString();
+        String indexFilename = tempDir.resolve("merged.sidx").toString();
+        // segment size not a multiple of the stride, so some blocks span two segments
+        List<String> segments = new ChunkMerger(chunks, pattern, indexFilename, 3001, 16, new Meter()).merge();
+        assertEquals(4, segments.size());
+
+        // the segments back to back are the same as the whole range sorted at once
+        ByteArrayOutputStream merged = new ByteArrayOutputStream();
+        for (String segment : segments) {
+            merged.write(Files.readAllBytes(Path.of(segment)));
+        }
+        String expected = writeChunk(3, new IpRange(0, 10_000));
+        assertArrayEquals(Files.readAllBytes(Path.of(expected)), merged.toByteArray());
+
+        try (MergedSearcher searcher = new MergedSearcher(pattern, indexFilename)) {
+            assertEquals(10_000, searcher.getCountEntries());
+            for (int ip = 0; ip < 10_000; ip++) {
+                IpAddress ipAddress = IpAddress.fromLong(ip);
+                assertEquals(ipAddress, searcher.search(Hasher.calculateHash(ipAddress)));
+            }
+            for (int ip = 10_000; ip < 11_000; ip++) {
+                assertNull(searcher.search(Hasher.calculateHash(IpAddress.fromLong(ip))));
+            }
+            byte[] lowest = new byte[20];
+            lowest[0] = Byte.MIN_VALUE;
+            assertNull(searcher.search(lowest));
+            byte[] highest = new byte[20];
+            Arrays.fill(highest, Byte.MAX_VALUE);
+            assertNull(searcher.search(highest));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void stagesReportToTheSharedRegistry() throws Exception {
+        MetricRegistry registry = Metrics.registry();
+        long hashes = registry.meter(MetricRegistry.name(GenerateChunkFile.class, "hashes")).getCount();
+        long flushed = registry.meter(MetricRegistry.name(StorageWriter.class, "bytesFlushed")).getCount();
+        long searches = registry.timer(MetricRegistry.name(BinarySearcher.class, "searchTime")).getCount();
+        long probed = registry.histogram(MetricRegistry.name(BinarySearcher.class, "probes")).getCount();
+
+        String chunk = tempDir.resolve("chunk.bin").toString();
+        new GenerateChunkFile(new IpRange(0, 10_000), chunk, new Meter()).run();
+        assertEquals(hashes + 10_000, Metrics.meter(GenerateChunkFile.class, "hashes").getCount());
+        assertEquals(flushed + 240_000, Metrics.meter(StorageWriter.class, "bytesFlushed").getCount());
+
+        new StorageSortInMemory(chunk, new Meter(), new Timer(), new Meter()).sort();
+        try (BinarySearcher searcher = new BinarySearcher(chunk)) {
+            assertEquals(IpAddress.fromLong(1234), searcher.search(Hasher.calculateHash(IpAddress.fromLong(1234))));
+        }
+        assertEquals(searches + 1, Metrics.timer(BinarySearcher.class, "searchTime").getCount());
+        assertEquals(probed + 1, Metrics.histogram(BinarySearcher.class, "probes").getCount());
+    }
+}
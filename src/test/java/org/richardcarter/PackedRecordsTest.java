@@ -0,0 +1,87 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedRecordsTest {
+
+    @TempDir
+    Path tempDir;
+
+    IpAndHash[] randomEntries(int count, long seed) {
+        Random random = new Random(seed);
+        IpAndHash[] entries = new IpAndHash[count];
+        for (int i = 0; i < count; i++) {
+            byte[] hash = new byte[20];
+            random.nextBytes(hash);
+            if (i % 10 == 0 && i > 0) {
+                // share a long prefix with the previous entry so deeper radix levels get exercised
+                System.arraycopy(entries[i - 1].getHash(), 0, hash, 0, 12);
+            }
+            entries[i] = new IpAndHash(IpAddress.fromLong(random.nextInt() & 0xFFFFFFFFL), hash);
+        }
+        return entries;
+    }
+
+    @Test
+    void sortMatchesArraysCompare() {
+        IpAndHash[] entries = randomEntries(300_000, 1);
+        PackedRecords records = new PackedRecords(entries.length);
+        for (int i = 0; i < entries.length; i++) {
+            records.set(i, (int) entries[i].getIp().toLong(), entries[i].getHash(), 0);
+        }
+
+        records.sort();
+        Arrays.sort(entries, (i1, i2) -> Arrays.compare(i1.getHash(), i2.getHash()));
+
+        byte[] hash = new byte[20];
+        for (int i = 0; i < entries.length; i++) {
+            records.hash(i, hash, 0);
+            assertArrayEquals(entries[i].getHash(), hash);
+        }
+    }
+
+    @Test
+    void sortFileInPlace() throws Exception {
+        IpAndHash[] entries = randomEntries(10_000, 2);
+        String filename = tempDir.resolve("chunk.bin").toString();
+        try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(filename))) {
+            for (IpAndHash entry : entries) {
+                out.write(entry.getIp().toBytes());
+                out.write(entry.getHash());
+            }
+        }
+
+        new StorageSortRadix(filename, new Meter(), new Timer(), new Meter()).sort();
+
+        Arrays.sort(entries, (i1, i2) -> Arrays.compare(i1.getHash(), i2.getHash()));
+        byte[] sorted = Files.readAllBytes(Path.of(filename));
+        assertEquals(entries.length * 24L, sorted.length);
+        for (int i = 0; i < entries.length; i++) {
+            assertArrayEquals(entries[i].getIp().toBytes(), Arrays.copyOfRange(sorted, i * 24, i * 24 + 4));
+            assertArrayEquals(entries[i].getHash(), Arrays.copyOfRange(sorted, i * 24 + 4, i * 24 + 24));
+        }
+    }
+
+    @Test
+    void ioBatchesOfChunksOverAnIntOfBytes() {
+        int ioBufferRecords = PackedRecords.batchRecords(0, Integer.MAX_VALUE);
+        // 100M and 2^28 records are more than 2^31 bytes
+        assertEquals(ioBufferRecords, PackedRecords.batchRecords(0, 100_000_000));
+        assertEquals(ioBufferRecords, PackedRecords.batchRecords(0, 1 << 28));
+        assertEquals(ioBufferRecords, PackedRecords.batchRecords(1 << 27, 1 << 28));
+        assertTrue(ioBufferRecords > 0 && (long) ioBufferRecords * PackedRecords.RECORD_SIZE <= Integer.MAX_VALUE);
+        assertEquals(5, PackedRecords.batchRecords((1 << 28) - 5, 1 << 28));
+    }
+}
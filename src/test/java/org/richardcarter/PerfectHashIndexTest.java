@@ -0,0 +1,87 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerfectHashIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void functionIsMinimalAndPerfect() {
+        assertMinimalAndPerfect(1L << 30);
+    }
+
+    @Test
+    void functionIsMinimalAndPerfectWhenStreamedEveryLevel() {
+        assertMinimalAndPerfect(0);
+    }
+
+    void assertMinimalAndPerfect(long inMemoryBytes) {
+        Random random = new Random(18);
+        int count = 200_000;
+        long[] keys0 = new long[count];
+        long[] keys1 = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys0[i] = random.nextLong();
+            keys1[i] = random.nextLong();
+        }
+        MinimalPerfectHash function = MinimalPerfectHash.build(consumer -> {
+            for (int i = 0; i < count; i++) {
+                consumer.accept(keys0[i], keys1[i]);
+            }
+        }, count, MinimalPerfectHash.DEFAULT_GAMMA, inMemoryBytes);
+
+        boolean[] taken = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            long index = function.index(keys0[i], keys1[i]);
+            assertTrue(index >= 0 && index < count, "index " + index);
+            assertFalse(taken[(int) index], "index " + index + " taken twice");
+            taken[(int) index] = true;
+        }
+
+        String filename = tempDir.resolve("function" + inMemoryBytes + ".mphf").toString();
+        function.write(filename);
+        MinimalPerfectHash read = MinimalPerfectHash.read(filename);
+        for (int i = 0; i < count; i += 97) {
+            assertEquals(function.index(keys0[i], keys1[i]), read.index(keys0[i], keys1[i]));
+        }
+    }
+
+    @Test
+    void findsEveryEntryAndRejectsOthers() throws Exception {
+        List<String> chunks = new ArrayList<>();
+        IpRange[] ranges = new IpRange(0xC0A80000L, 0xC0A80000L + 50_000).split(2);
+        for (int i = 0; i < ranges.length; i++) {
+            String filename = tempDir.resolve("chunk" + i + ".bin").toString();
+            new GenerateChunkFile(ranges[i], filename, new Meter()).run();
+            chunks.add(filename);
+        }
+
+        String basename = tempDir.resolve("perfect").toString();
+        PerfectHashIndex.build(chunks, basename, MinimalPerfectHash.DEFAULT_GAMMA, new Meter());
+        // about 3.7 bits per entry
+        assertTrue(Files.size(Path.of(PerfectHashIndex.functionFilenameFor(basename))) < 50_000);
+
+        try (PerfectHashIndex index = new PerfectHashIndex(basename)) {
+            assertEquals(50_000, index.getCountEntries());
+            for (long ip = ranges[0].getStartInclusive(); ip < ranges[1].getEndExclusive(); ip++) {
+                IpAddress expected = IpAddress.fromLong(ip);
+                assertEquals(expected, index.search(Hasher.calculateHash(expected)));
+            }
+            for (long ip = 0; ip < 20_000; ip++) {
+                assertNull(index.search(Hasher.calculateHash(IpAddress.fromLong(ip))));
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.richardcarter;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Sha1IpHasherTest {
+
+    void assertMatchesMessageDigest(String salt) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        Sha1IpHasher hasher = new Sha1IpHasher(salt);
+        byte[] actual = new byte[24];
+
+        Random random = new Random(salt.length());
+        int[] ips = new int[2000];
+        for (int i = 0; i < ips.length; i++) {
+            ips[i] = random.nextInt();
+        }
+        ips[0] = 0;
+        ips[1] = -1;
+        ips[2] = 0x0A000001;
+
+        for (int ip : ips) {
+            IpAddress ipAddress = IpAddress.fromLong(ip & 0xFFFFFFFFL);
+            hasher.hash(ip, actual, 3);
+            byte[] expected = md.digest(ipAddress.toBytesPlusSalt(salt));
+            for (int i = 0; i < 20; i++) {
+                assertEquals(expected[i], actual[3 + i], ipAddress + " + " + salt.length() + " byte salt");
+            }
+        }
+    }
+
+    @Test
+    void matchesMessageDigestForEverySaltLength() throws Exception {
+        // covers one, two and three block messages and the padding boundaries in between
+        StringBuilder salt = new StringBuilder();
+        for (int length = 0; length <= 140; length++) {
+            assertMatchesMessageDigest(salt.toString());
+            salt.append((char) ('a' + length % 26));
+        }
+        assertMatchesMessageDigest("s\u00e4lt");
+    }
+
+}
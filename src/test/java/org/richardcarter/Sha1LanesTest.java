@@ -0,0 +1,60 @@
+package org.richardcarter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Sha1LanesTest {
+
+    void assertMatchesScalar(String salt, int firstIp, int count) {
+        Sha1Lanes lanes = new Sha1Lanes(salt);
+        Sha1IpHasher scalar = new Sha1IpHasher(salt);
+        byte[] actual = new byte[5 + Sha1Lanes.LANES * 20];
+        byte[] expected = new byte[20];
+
+        lanes.hash(firstIp, count, actual, 5);
+        for (int lane = 0; lane < count; lane++) {
+            scalar.hash(firstIp + lane, expected, 0);
+            for (int i = 0; i < 20; i++) {
+                assertEquals(expected[i], actual[5 + lane * 20 + i],
+                        IpAddress.fromLong((firstIp + lane) & 0xFFFFFFFFL) + " + " + salt.length() + " byte salt");
+            }
+        }
+    }
+
+    @Test
+    void matchesScalarForEverySaltLength() {
+        // lanes straddle dotted-quad length changes (9 -> 10, 99 -> 100) and so block count changes
+        StringBuilder salt = new StringBuilder();
+        for (int length = 0; length <= 140; length++) {
+            assertMatchesScalar(salt.toString(), 0, Sha1Lanes.LANES);
+            assertMatchesScalar(salt.toString(), 95, Sha1Lanes.LANES);
+            assertMatchesScalar(salt.toString(), -5, 5);
+            salt.append((char) ('a' + length % 26));
+        }
+    }
+
+    @Test
+    void matchesScalarForRandomRanges() {
+        Random random = new Random(10);
+        for (int i = 0; i < 500; i++) {
+            assertMatchesScalar("SALT GOES HERE", random.nextInt(), 1 + random.nextInt(Sha1Lanes.LANES));
+        }
+    }
+
+    @Test
+    void hashRangeMatchesCalculateHash() {
+        int count = Sha1Lanes.LANES * 3 + 5;
+        byte[] hashes = new byte[count * 20];
+        Hasher.hashRange(0x0A0000FA, count, hashes);
+        for (int i = 0; i < count; i++) {
+            byte[] expected = Hasher.calculateHash(IpAddress.fromLong(0x0A0000FAL + i));
+            for (int j = 0; j < 20; j++) {
+                assertEquals(expected[j], hashes[i * 20 + j]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortSchedulerTest {
+
+    @TempDir
+    Path tempDir;
+
+    List<String> writeChunks(String prefix, IpRange[] ranges) {
+        List<String> filenames = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i++) {
+            String filename = tempDir.resolve(prefix + i + ".bin").toString();
+            new GenerateChunkFile(ranges[i], filename, new Meter()).run();
+            filenames.add(filename);
+        }
+        return filenames;
+    }
+
+    void assertSortsLikeRadix(long memoryBudget, IpRange[] ranges) throws Exception {
+        List<String> expected = writeChunks("expected" + memoryBudget + "-", ranges);
+        for (String filename : expected) {
+            new StorageSortRadix(filename, new Meter(), new Timer(), new Meter()).sort();
+        }
+
+        List<String> actual = writeChunks("actual" + memoryBudget + "-", ranges);
+        Meter readMeter = new Meter();
+        try (SortScheduler scheduler = new SortScheduler(memoryBudget, 2, readMeter, new Timer(), new Meter())) {
+            scheduler.sortAll(actual);
+            assertEquals(new MemoryBudget(memoryBudget).getTotalMegabytes(), scheduler.getAvailableMegabytes());
+        }
+
+        for (int i = 0; i < ranges.length; i++) {
+            assertArrayEquals(Files.readAllBytes(Path.of(expected.get(i))), Files.readAllBytes(Path.of(actual.get(i))));
+            assertArrayEquals(Files.readAllBytes(Path.of(PrefixIndex.filenameFor(expected.get(i)))),
+                    Files.readAllBytes(Path.of(PrefixIndex.filenameFor(actual.get(i)))));
+        }
+    }
+
+    @Test
+    void sortsSeveralChunksAtOnce() throws Exception {
+        // 1.2 MB chunks plus 12 MB of I/O buffers each; four fit at a time
+        assertSortsLikeRadix(64L << 20, new IpRange(0, 400_000).split(8));
+    }
+
+    @Test
+    void sortsChunksBiggerThanTheBudgetOnDisk() throws Exception {
+        assertSortsLikeRadix(1L << 20, new IpRange(0, 200_000).split(2));
+    }
+
+    @Test
+    void closeLeavesEveryChunkWhole() throws Exception {
+        IpRange[] ranges = new IpRange(0, 400_000).split(8);
+        List<String> unsorted = writeChunks("unsorted-", ranges);
+        List<String> sorted = writeChunks("sorted-", ranges);
+        for (String filename : sorted) {
+            new StorageSortRadix(filename, new Meter(), new Timer(), new Meter()).sort();
+        }
+
+        List<String> actual = writeChunks("actual-", ranges);
+        try (SortScheduler scheduler = new SortScheduler(64L << 20, 2, new Meter(), new Timer(), new Meter())) {
+            for (String filename : actual) {
+                scheduler.submit(filename);
+            }
+        }
+
+        // each chunk was either sorted and written in full, or not touched
+        for (int i = 0; i < ranges.length; i++) {
+            byte[] bytes = Files.readAllBytes(Path.of(actual.get(i)));
+            if (Files.exists(Path.of(PrefixIndex.filenameFor(actual.get(i))))) {
+                assertArrayEquals(Files.readAllBytes(Path.of(sorted.get(i))), bytes);
+            } else {
+                assertArrayEquals(Files.readAllBytes(Path.of(unsorted.get(i))), bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.richardcarter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageSortExternalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void mergedRunsMatchInMemorySort() throws Exception {
+        String external = tempDir.resolve("external.bin").toString();
+        String inMemory = tempDir.resolve("inMemory.bin").toString();
+        try (StorageWriter writer = new StorageWriter(external)) {
+            for (int ip = 0; ip < 10_000; ip++) {
+                IpAddress ipAddress = IpAddress.fromLong(ip * 7919L);
+                writer.write(ipAddress, Hasher.calculateHash(ipAddress));
+            }
+        }
+        Files.copy(Path.of(external), Path.of(inMemory));
+
+        // 24,000 bytes is 1,000 records per run, so 10 runs get merged
+        new StorageSortExternal(external, 24_000, new Meter(), new Timer(), new Meter()).sort();
+        new StorageSortRadix(inMemory, new Meter(), new Timer(), new Meter()).sort();
+
+        assertArrayEquals(Files.readAllBytes(Path.of(inMemory)), Files.readAllBytes(Path.of(external)));
+        assertArrayEquals(Files.readAllBytes(Path.of(PrefixIndex.filenameFor(inMemory))),
+                Files.readAllBytes(Path.of(PrefixIndex.filenameFor(external))));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(4, files.count());
+        }
+    }
+
+    @Test
+    void failedMergeKeepsTheOriginalAndItsRuns() throws Exception {
+        String filename = tempDir.resolve("chunk.bin").toString();
+        try (StorageWriter writer = new StorageWriter(filename)) {
+            for (int ip = 0; ip < 5_000; ip++) {
+                IpAddress ipAddress = IpAddress.fromLong(ip);
+                writer.write(ipAddress, Hasher.calculateHash(ipAddress));
+            }
+        }
+        byte[] original = Files.readAllBytes(Path.of(filename));
+        // the merge can't create its output
+        Files.createDirectory(Path.of(filename + ".tmp"));
+
+        StorageSortExternal sort = new StorageSortExternal(filename, 24_000, new Meter(), new Timer(), new Meter());
+        assertThrows(Exception.class, sort::sort);
+        assertArrayEquals(original, Files.readAllBytes(Path.of(filename)));
+        assertTrue(Files.exists(Path.of(filename + ".run0")));
+    }
+}
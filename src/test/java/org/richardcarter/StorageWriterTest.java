@@ -0,0 +1,49 @@
+package org.richardcarter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    void assertWrites(int count, long expectedBytes) throws Exception {
+        Path file = tempDir.resolve("table" + count + "-" + expectedBytes + ".bin");
+        byte[] hashes = new byte[count * 20];
+        Hasher.hashRange(0, count, hashes);
+        try (StorageWriter writer = new StorageWriter(file.toString(), expectedBytes)) {
+            for (int ip = 0; ip < count; ip++) {
+                writer.write(ip, hashes, ip * 20);
+            }
+            assertEquals(count * 24L, writer.getFileSize());
+        }
+
+        ByteBuffer written = ByteBuffer.wrap(Files.readAllBytes(file));
+        assertEquals(count * 24, written.remaining());
+        byte[] hash = new byte[20];
+        for (int ip = 0; ip < count; ip++) {
+            assertEquals(ip, written.getInt());
+            written.get(hash);
+            assertArrayEquals(Hasher.calculateHash(IpAddress.fromLong(ip)), hash);
+        }
+    }
+
+    @Test
+    void writesAcrossManyBuffers() throws Exception {
+        assertWrites(400_000, 0);
+    }
+
+    @Test
+    void preallocatesAndTrims() throws Exception {
+        assertWrites(300_000, 300_000 * 24L);
+        assertWrites(300_000, 1_000_000 * 24L);
+        assertWrites(0, 24);
+    }
+}